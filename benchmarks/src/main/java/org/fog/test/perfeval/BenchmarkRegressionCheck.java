@@ -0,0 +1,81 @@
+package org.fog.test.perfeval;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+public class BenchmarkRegressionCheck {
+
+    // Compares two JMH result files written with -rf csv and exits with 1 if any score got worse than the
+    // baseline by more than the tolerance (default 10%), e.g.
+    //   java -cp target/benchmarks.jar org.fog.test.perfeval.BenchmarkRegressionCheck baseline.csv jmh-result.csv 0.1
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BenchmarkRegressionCheck <baseline.csv> <current.csv> [tolerance]");
+            System.exit(2);
+        }
+        double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : 0.1;
+        Map<String, double[]> baseline = read(Paths.get(args[0]));
+        Map<String, double[]> current = read(Paths.get(args[1]));
+
+        int regressions = 0;
+        for (Map.Entry<String, double[]> entry : current.entrySet()) {
+            double[] before = baseline.get(entry.getKey());
+            if (before == null) {
+                continue;
+            }
+            // Throughput units (ops/s) improve upwards, time units (s/op) downwards
+            double change = (entry.getValue()[0] - before[0]) / before[0];
+            double worse = entry.getValue()[1] > 0 ? -change : change;
+            String status = worse > tolerance ? "REGRESSION" : "ok";
+            if (worse > tolerance) {
+                regressions++;
+            }
+            System.out.printf("%-10s %+7.1f%%  %s%n", status, change * 100, entry.getKey());
+        }
+        System.exit(regressions > 0 ? 1 : 0);
+    }
+
+    // Score and direction (1 if higher is better) by benchmark, mode and parameters
+    private static Map<String, double[]> read(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file);
+        List<String> header = split(lines.get(0));
+        int score = header.indexOf("Score");
+        int unit = header.indexOf("Unit");
+
+        Map<String, double[]> scores = new LinkedHashMap<>();
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            List<String> fields = split(line);
+            StringBuilder key = new StringBuilder(fields.get(0) + " " + fields.get(1));
+            for (int i = 0; i < header.size(); i++) {
+                if (header.get(i).startsWith("Param: ")) {
+                    key.append(' ').append(header.get(i).substring(7)).append('=').append(fields.get(i));
+                }
+            }
+            double higherIsBetter = fields.get(unit).startsWith("ops/") ? 1 : 0;
+            scores.put(key.toString(), new double[]{Double.parseDouble(fields.get(score).replace(',', '.')), higherIsBetter});
+        }
+        return scores;
+    }
+
+    private static List<String> split(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (char c : line.toCharArray()) {
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
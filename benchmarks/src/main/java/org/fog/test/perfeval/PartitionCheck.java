@@ -0,0 +1,97 @@
+package org.fog.test.perfeval;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.*;
+import java.util.*;
+
+public class PartitionCheck {
+
+    // Results a partitioned run has to reproduce. Equal-time events may run in a different order across partitions,
+    // so they only have to match within the tolerance.
+    private static final String[] COMPARED = {"loopDelay", "loopP50", "loopP95", "loopP99", "energy", "cloudCost",
+            "networkUsage"};
+
+    // A run large enough for partitions to pay off: 8 edges of 10 gateways with 10 patients each, Predictor on the edge
+    private static final String[] DEFAULTS = {"--edges=8", "--gatewaysPerEdge=10", "--patientsPerGateway=10",
+            "--placement=edge", "--duration=60000", "--partitions=4", "--verbose=false"};
+
+    // Runs one configuration sequentially and in partitions, each in its own JVM, and prints both results, the
+    // wall-clock times and the speedup. Exits with 1 if a compared result differs by more than the tolerance
+    // (default 2%). Takes SmartHealthSim options on top of DEFAULTS, plus --tolerance, e.g.
+    //   java -cp target/benchmarks.jar org.fog.test.perfeval.PartitionCheck --edges=16 --partitions=8 --tolerance=0.05
+    public static void main(String[] args) throws Exception {
+        double tolerance = 0.02;
+        List<String> options = new ArrayList<>(Arrays.asList(DEFAULTS));
+        for (String arg : args) {
+            if (arg.startsWith("--tolerance=")) {
+                tolerance = Double.parseDouble(arg.substring("--tolerance=".length()));
+            } else {
+                options.add(arg);
+            }
+        }
+        SimulationConfig config = SimulationConfig.fromArgs(options.toArray(new String[0]));
+        if (config.partitions < 1) {
+            throw new IllegalArgumentException("--partitions must be at least 1");
+        }
+        int partitions = config.partitions;
+        Path dir = Files.createTempDirectory("partition-check");
+
+        config.partitions = 0;
+        long start = System.nanoTime();
+        Properties sequential = run(config, dir.resolve("sequential"));
+        double sequentialSeconds = (System.nanoTime() - start) / 1e9;
+
+        config.partitions = partitions;
+        start = System.nanoTime();
+        Properties partitioned = run(config, dir.resolve("partitioned"));
+        double partitionedSeconds = (System.nanoTime() - start) / 1e9;
+
+        int mismatches = 0;
+        System.out.printf("%-14s %14s %14s %8s%n", "metric", "sequential", "partitioned", "diff");
+        for (String name : COMPARED) {
+            double expected = Double.parseDouble(sequential.getProperty(name, "NaN"));
+            double actual = Double.parseDouble(partitioned.getProperty(name, "NaN"));
+            double scale = Math.max(Math.abs(expected), Math.abs(actual));
+            double diff = scale == 0 ? 0 : Math.abs(actual - expected) / scale;
+            boolean ok = diff <= tolerance;
+            if (!ok) {
+                mismatches++;
+            }
+            System.out.printf("%-14s %14.6g %14.6g %7.2f%%  %s%n", name, expected, actual, diff * 100, ok ? "ok" : "MISMATCH");
+        }
+
+        // Each run includes starting its JVM and building the topology, as a sweep point would
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.printf("sequential %.2f s, %d partitions %.2f s: speedup %.2fx with %d threads on %d cores%n",
+                sequentialSeconds, partitions, partitionedSeconds, sequentialSeconds / partitionedSeconds,
+                Math.min(partitions, config.edges) + 1, cores);
+        System.exit(mismatches > 0 ? 1 : 0);
+    }
+
+    private static Properties run(SimulationConfig config, Path base) throws IOException, InterruptedException {
+        Path resultFile = Paths.get(base + ".properties");
+        config.resultFile = resultFile.toString();
+
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(SmartHealthSim.class.getName());
+        command.addAll(config.toArgs());
+
+        int exitCode = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(Paths.get(base + ".log").toFile())
+                .start()
+                .waitFor();
+        if (!Files.exists(resultFile)) {
+            throw new IllegalStateException("Run failed with exit code " + exitCode + ", see " + base + ".log");
+        }
+        Properties results = new Properties();
+        try (Reader in = Files.newBufferedReader(resultFile)) {
+            results.load(in);
+        }
+        return results;
+    }
+}
@@ -0,0 +1,68 @@
+package org.fog.test.perfeval;
+
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class SimulationBenchmark {
+
+    private static final double MS_PER_HOUR = 3_600_000;
+
+    @Param({"100", "1000"})
+    int patients;
+
+    // Simulated milliseconds per run
+    @Param({"10000"})
+    int duration;
+
+    @Param({"adaptive"})
+    String placement;
+
+    // With progress on, every simulated second is sampled and appended to a progress file, so the difference between
+    // the two settings is the overhead of progress tracking on the event loop
+    @Param({"false", "true"})
+    boolean progress;
+
+    // Secondary results: in Throughput mode events and simulated hours per wall-clock second, in AverageTime mode
+    // wall-clock seconds per event and per simulated hour
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long events;
+        public double simulatedHours;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            events = 0;
+            simulatedHours = 0;
+        }
+    }
+
+    // Building the run is measured by TopologyBenchmark, so only the event loop is timed here
+    @Setup(Level.Invocation)
+    public void setUp() throws Exception {
+        SimulationConfig config = TopologyBenchmark.forPatients(patients);
+        config.duration = duration;
+        config.placement = placement;
+        if (progress) {
+            config.progressInterval = 1000;
+            config.progressFile = Files.createTempFile("progress", ".jsonl").toString();
+        }
+        SmartHealthSim.setUp(config).setExitOnStop(false);
+    }
+
+    @Benchmark
+    public void simulate(Counters counters) {
+        CloudSim.startSimulation();
+        counters.events += SimulationMetrics.getInstance().deviceEvents;
+        counters.simulatedHours += duration / MS_PER_HOUR;
+    }
+}
@@ -0,0 +1,66 @@
+package org.fog.test.perfeval;
+
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.fog.application.Application;
+import org.fog.entities.FogBroker;
+import org.fog.utils.Logger;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TopologyBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    int patients;
+
+    private SimulationConfig config;
+    private int userId;
+    private Application application;
+    private PayloadSizeModel payload;
+
+    // 10 patients per gateway and 10 gateways per edge, so edges grow with the patient count
+    static SimulationConfig forPatients(int patients) {
+        SimulationConfig config = new SimulationConfig();
+        config.patientsPerGateway = Math.min(patients, 10);
+        config.gatewaysPerEdge = Math.max(1, Math.min(patients / 10, 10));
+        config.edges = Math.max(1, patients / 100);
+        config.verbose = false;
+        return config;
+    }
+
+    // Payload sizes are measured once, outside the timed invocations
+    @Setup(Level.Trial)
+    public void measurePayload() {
+        SimulationConfig defaults = new SimulationConfig();
+        payload = PayloadSizeModel.measure(defaults.encoding, defaults.encodingBatch, 10, defaults.sensorInterval,
+                defaults.vitalsVolatility, null);
+    }
+
+    // CloudSim keeps its entities in static state, so every invocation starts from a fresh toolkit
+    @Setup(Level.Invocation)
+    public void setUp() throws Exception {
+        Logger.ENABLED = false;
+        config = forPatients(patients);
+        CloudSim.init(1, Calendar.getInstance(), false);
+        userId = new FogBroker("broker").getId();
+        application = SmartHealthSim.createApplication("smart_health", userId, config, 2000, 100, 1000, 50, payload);
+    }
+
+    @Benchmark
+    public Application createApplication() {
+        return SmartHealthSim.createApplication("smart_health", userId, config, 2000, 100, 1000, 50, payload);
+    }
+
+    @Benchmark
+    public void createTopology(Blackhole blackhole) throws Exception {
+        blackhole.consume(SmartHealthTopology.create(userId, "smart_health", application, config));
+    }
+}
@@ -0,0 +1,280 @@
+package org.fog.test.perfeval;
+
+import java.util.*;
+
+import org.cloudbus.cloudsim.Log;
+import org.fog.application.AppEdge;
+import org.fog.application.AppModule;
+import org.fog.application.Application;
+import org.fog.entities.FogDevice;
+import org.fog.placement.ModulePlacement;
+
+public class AdaptiveModulePlacement extends ModulePlacement {
+
+    // Tiers on the path from a gateway to the cloud, indexed by the number of hops above the gateway
+    private static final String[] TIERS = {SmartHealthTopology.MOBILE, SmartHealthTopology.EDGE, SmartHealthTopology.CLOUD};
+    private static final int MOBILE_TIER = 0;
+    private static final int EDGE_TIER = 1;
+    private static final int CLOUD_TIER = 2;
+
+    // A migration only happens if it lowers the estimated loop delay by at least this fraction
+    private static final double MIGRATION_GAIN = 0.1;
+
+    private final SmartHealthTopology topology;
+    private final List<String> loopModules;
+    private final Map<String, String> pinnedModules;
+    private final Map<String, Double> ratePerGateway;
+    private final String migratableModule;
+    private double saturation;
+
+    // CPU length (MI) of the tuples each module processes and size of the tuples between two modules
+    private final Map<String, Double> cpuLength = new HashMap<>();
+    private final Map<String, Double> tupleSize = new HashMap<>();
+
+    // Chosen tier of every loop module, per edge
+    private final Map<Integer, int[]> placements = new HashMap<>();
+    private final Set<String> deployed = new HashSet<>();
+    private final List<SmartHealthFogDevice> migratableEdges = new ArrayList<>();
+
+    // Expected processing demand (MI per time unit) already placed on the cloud
+    private double cloudDemand = 0;
+
+    int migrations = 0;
+
+    // Chooses the tier of every loop module per edge subtree from the device MIPS, uplink latency and bandwidth and
+    // the CPU and size of the AppEdges. ratePerGateway is the expected number of tuples each module receives per
+    // time unit from one gateway; a device loaded beyond the saturation fraction of its MIPS is never chosen.
+    public AdaptiveModulePlacement(SmartHealthTopology topology, Application application, List<String> loopModules,
+                                   Map<String, String> pinnedModules, Map<String, Double> ratePerGateway,
+                                   String migratableModule, double saturation) {
+        this.topology = topology;
+        this.loopModules = loopModules;
+        this.pinnedModules = pinnedModules;
+        this.ratePerGateway = ratePerGateway;
+        this.migratableModule = migratableModule;
+        this.saturation = saturation;
+
+        for (AppEdge edge : application.getEdges()) {
+            if (edge.getEdgeType() != AppEdge.ACTUATOR) {
+                cpuLength.put(edge.getDestination(), edge.getTupleCpuLength());
+                tupleSize.put(edge.getSource() + "->" + edge.getDestination(), edge.getTupleNwLength());
+            }
+        }
+
+        this.setFogDevices(topology.fogDevices);
+        this.setApplication(application);
+        this.setModuleToDeviceMap(new HashMap<String, List<Integer>>());
+        this.setDeviceToModuleMap(new HashMap<Integer, List<AppModule>>());
+        this.setModuleInstanceCountMap(new HashMap<Integer, Map<String, Integer>>());
+        for (FogDevice device : topology.fogDevices) {
+            getModuleInstanceCountMap().put(device.getId(), new HashMap<String, Integer>());
+        }
+        mapModules();
+    }
+
+    @Override
+    protected void mapModules() {
+        for (Map.Entry<String, String> pinned : pinnedModules.entrySet()) {
+            for (SmartHealthFogDevice device : topology.getTier(pinned.getValue())) {
+                deploy(pinned.getKey(), device);
+            }
+        }
+
+        List<int[]> candidates = new ArrayList<>();
+        enumerate(new int[loopModules.size()], 0, MOBILE_TIER, candidates);
+
+        for (SmartHealthFogDevice edge : topology.edges) {
+            if (topology.getChildren(edge).isEmpty()) {
+                continue;
+            }
+
+            // Falls back to running everything after the pinned modules in the cloud if every option saturates
+            int[] best = candidates.get(candidates.size() - 1);
+            double bestDelay = Double.POSITIVE_INFINITY;
+            for (int[] levels : candidates) {
+                double delay = estimateDelay(edge, levels, expectedDemand(edge, levels, cloudDemand));
+                if (delay < bestDelay) {
+                    best = levels;
+                    bestDelay = delay;
+                }
+            }
+
+            placements.put(edge.getId(), best.clone());
+            cloudDemand += expectedDemand(edge, best, 0)[CLOUD_TIER];
+            deploy(edge, best);
+            Log.printLine("Adaptive placement for " + edge.getName() + ": " + describe(best) + " (estimated loop delay " + bestDelay + ")");
+        }
+    }
+
+    // Lists every assignment where tiers never decrease along the loop, since all loop tuples travel up
+    private void enumerate(int[] levels, int index, int minTier, List<int[]> candidates) {
+        if (index == levels.length) {
+            candidates.add(levels.clone());
+            return;
+        }
+        String pinned = pinnedModules.get(loopModules.get(index));
+        for (int tier = minTier; tier < TIERS.length; tier++) {
+            if (pinned != null && !pinned.equals(TIERS[tier])) {
+                continue;
+            }
+            levels[index] = tier;
+            enumerate(levels, index + 1, tier, candidates);
+        }
+    }
+
+    // Demand (MI per time unit) on one device of each tier of an edge subtree, on top of the given cloud demand
+    private double[] expectedDemand(SmartHealthFogDevice edge, int[] levels, double cloudBase) {
+        int gateways = topology.getChildren(edge).size();
+        SmartHealthFogDevice[] path = {topology.getChildren(edge).get(0), edge, topology.cloud};
+        double[] demand = {0, 0, cloudBase};
+        for (int i = 0; i < loopModules.size(); i++) {
+            String module = loopModules.get(i);
+            double perGateway = ratePerGateway.getOrDefault(module, 0.0) * cpuOn(module, path[levels[i]]);
+            demand[levels[i]] += levels[i] == MOBILE_TIER ? perGateway : perGateway * gateways;
+        }
+        return demand;
+    }
+
+    // Sum of the link delays between consecutive modules and the queueing-adjusted execution time of every module
+    // that runs before the loop end; the loop ends when its last module receives the tuple
+    private double estimateDelay(SmartHealthFogDevice edge, int[] levels, double[] demand) {
+        SmartHealthFogDevice[] path = {topology.getChildren(edge).get(0), edge, topology.cloud};
+        double delay = 0;
+        for (int i = 1; i < loopModules.size(); i++) {
+            double size = tupleSize.getOrDefault(loopModules.get(i - 1) + "->" + loopModules.get(i), 0.0);
+            for (int tier = levels[i - 1]; tier < levels[i]; tier++) {
+                delay += path[tier].getUplinkLatency() + size / path[tier].getUplinkBandwidth();
+            }
+            if (i < loopModules.size() - 1) {
+                delay += executionDelay(loopModules.get(i), path[levels[i]], demand[levels[i]]);
+            }
+        }
+        return delay;
+    }
+
+    private double executionDelay(String module, SmartHealthFogDevice device, double demand) {
+        double mips = device.getHost().getTotalMips();
+        double utilization = demand / mips;
+        if (utilization >= saturation) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return cpuOn(module, device) / mips / (1 - utilization);
+    }
+
+    // CPU length of the module's tuples on the device, which may be calibrated per device
+    private double cpuOn(String module, SmartHealthFogDevice device) {
+        return device.getModuleCpu(module, cpuLength.getOrDefault(module, 0.0));
+    }
+
+    private void deploy(SmartHealthFogDevice edge, int[] levels) {
+        int migratableIndex = loopModules.indexOf(migratableModule);
+        for (int i = 0; i < loopModules.size(); i++) {
+            String module = loopModules.get(i);
+            if (pinnedModules.containsKey(module)) {
+                continue;
+            }
+            if (levels[i] == MOBILE_TIER) {
+                for (SmartHealthFogDevice gateway : topology.getChildren(edge)) {
+                    deploy(module, gateway);
+                }
+            } else {
+                deploy(module, levels[i] == EDGE_TIER ? edge : topology.cloud);
+            }
+        }
+
+        // The migratable module can move between edge and cloud if it follows a lower tier and everything after it
+        // is in the cloud; it then gets an instance on both and the edge passes its tuples up while offloaded
+        if (migratableIndex > 0 && levels[migratableIndex] != MOBILE_TIER
+                && levels[migratableIndex - 1] < EDGE_TIER && allInCloudAfter(levels, migratableIndex)) {
+            deploy(migratableModule, edge);
+            deploy(migratableModule, topology.cloud);
+            edge.setOffloaded(migratableModule, levels[migratableIndex] == CLOUD_TIER);
+            migratableEdges.add(edge);
+        }
+    }
+
+    private boolean allInCloudAfter(int[] levels, int index) {
+        for (int i = index + 1; i < levels.length; i++) {
+            if (levels[i] != CLOUD_TIER) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void deploy(String moduleName, SmartHealthFogDevice device) {
+        AppModule module = getApplication().getModuleByName(moduleName);
+        if (module != null && deployed.add(moduleName + "@" + device.getId())) {
+            createModuleInstanceOnDevice(module, device);
+        }
+    }
+
+    // Re-estimates edge and cloud execution of the migratable module from the tuples that arrived during the last
+    // interval and moves it where the loop delay is lower; a saturated edge always loses against an unsaturated cloud
+    void reevaluate(double interval) {
+        double cloudMeasured = demandOf(topology.cloud, topology.cloud.drainArrivals()) / interval;
+        Map<Integer, Map<String, Long>> edgeArrivals = new HashMap<>();
+        for (SmartHealthFogDevice edge : topology.edges) {
+            edgeArrivals.put(edge.getId(), edge.drainArrivals());
+        }
+
+        int index = loopModules.indexOf(migratableModule);
+        for (SmartHealthFogDevice edge : migratableEdges) {
+            // An autoscaled edge may have handed all its gateways to other edges
+            if (topology.getChildren(edge).isEmpty()) {
+                continue;
+            }
+            long arrived = edgeArrivals.get(edge.getId()).getOrDefault(migratableModule, 0L);
+            double moduleDemand = arrived * cpuOn(migratableModule, edge) / interval;
+            double moduleCloudDemand = arrived * cpuOn(migratableModule, topology.cloud) / interval;
+            boolean offloaded = edge.isOffloaded(migratableModule);
+            double cloudOthers = cloudMeasured - (offloaded ? moduleCloudDemand : 0);
+
+            int[] levels = placements.get(edge.getId());
+            double mobileDemand = expectedDemand(edge, levels, 0)[MOBILE_TIER];
+            int[] edgeLevels = levels.clone();
+            edgeLevels[index] = EDGE_TIER;
+            int[] cloudLevels = levels.clone();
+            cloudLevels[index] = CLOUD_TIER;
+            double edgeDelay = estimateDelay(edge, edgeLevels, new double[]{mobileDemand, moduleDemand, cloudOthers});
+            double cloudDelay = estimateDelay(edge, cloudLevels, new double[]{mobileDemand, 0, cloudOthers + moduleCloudDemand});
+
+            double current = offloaded ? cloudDelay : edgeDelay;
+            double alternative = offloaded ? edgeDelay : cloudDelay;
+            if (alternative < current * (1 - MIGRATION_GAIN)) {
+                edge.setOffloaded(migratableModule, !offloaded);
+                placements.put(edge.getId(), offloaded ? edgeLevels : cloudLevels);
+                cloudMeasured += offloaded ? -moduleCloudDemand : moduleCloudDemand;
+                migrations++;
+                Log.printLine("Adaptive placement moved " + migratableModule + " of " + edge.getName()
+                        + " to " + (offloaded ? "the edge" : "the cloud") + " (estimated loop delay " + alternative + ")");
+            }
+        }
+    }
+
+    private double demandOf(SmartHealthFogDevice device, Map<String, Long> arrivals) {
+        double demand = 0;
+        for (Map.Entry<String, Long> entry : arrivals.entrySet()) {
+            demand += entry.getValue() * cpuOn(entry.getKey(), device);
+        }
+        return demand;
+    }
+
+    // Changes the saturation for the following re-evaluations, e.g. in a branch resumed from a checkpoint
+    void setSaturation(double saturation) {
+        this.saturation = saturation;
+    }
+
+    // Number of edges whose migratable module currently runs in the cloud
+    long countOffloaded() {
+        return migratableEdges.stream().filter(edge -> edge.isOffloaded(migratableModule)).count();
+    }
+
+    private String describe(int[] levels) {
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < levels.length; i++) {
+            description.append(i == 0 ? "" : ", ").append(loopModules.get(i)).append("=").append(TIERS[levels[i]]);
+        }
+        return description.toString();
+    }
+}
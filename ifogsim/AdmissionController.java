@@ -0,0 +1,129 @@
+package org.fog.test.perfeval;
+
+import java.util.*;
+
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.SimEvent;
+import org.fog.entities.Tuple;
+
+public class AdmissionController {
+
+    // Modes: priority scheduling only, or also shed / offload routine tuples once the device is overloaded
+    static final String PRIORITY = "priority";
+    static final String SHED = "shed";
+    static final String OFFLOAD = "offload";
+
+    // Admission decisions for a routine tuple
+    enum Decision { ADMIT, SHED, OFFLOAD }
+
+    private final String module;
+    private final String mode;
+    private final int concurrency;
+    private int queueDepth;
+    private double utilizationThreshold;
+    private final double window;
+
+    // Tuples waiting to start, one FIFO per priority class
+    private final ArrayDeque<SimEvent>[] waiting;
+    private int inFlight = 0;
+
+    // Exponentially weighted fraction of time the module was busy, with time constant window
+    private double utilization = 0;
+    private double lastUpdate = 0;
+
+    long shed = 0;
+    long offloaded = 0;
+
+    @SuppressWarnings("unchecked")
+    AdmissionController(String module, String mode, int concurrency, int queueDepth, double utilizationThreshold, double window) {
+        if (!PRIORITY.equals(mode) && !SHED.equals(mode) && !OFFLOAD.equals(mode)) {
+            throw new IllegalArgumentException("Unknown admission mode: " + mode);
+        }
+        this.module = module;
+        this.mode = mode;
+        this.concurrency = concurrency;
+        this.queueDepth = queueDepth;
+        this.utilizationThreshold = utilizationThreshold;
+        this.window = window;
+        waiting = new ArrayDeque[TuplePriority.NAMES.length];
+        for (int i = 0; i < waiting.length; i++) {
+            waiting[i] = new ArrayDeque<>();
+        }
+    }
+
+    boolean controls(String moduleName) {
+        return module.equals(moduleName);
+    }
+
+    // Critical tuples are always admitted; routine ones are turned away while the queue or utilization is over
+    // its threshold, offloaded if the parent can run the module and shed otherwise
+    Decision admit(Tuple tuple, boolean parentHostsModule) {
+        if (PRIORITY.equals(mode) || TuplePriority.of(tuple) == TuplePriority.CRITICAL) {
+            return Decision.ADMIT;
+        }
+        if (depth() < queueDepth && utilization() < utilizationThreshold) {
+            return Decision.ADMIT;
+        }
+        if (OFFLOAD.equals(mode) && parentHostsModule) {
+            offloaded++;
+            return Decision.OFFLOAD;
+        }
+        shed++;
+        return Decision.SHED;
+    }
+
+    // Returns true if the tuple may start now, otherwise queues it behind the tuples of its priority class
+    boolean tryStart(SimEvent ev) {
+        if (inFlight < concurrency) {
+            updateUtilization();
+            inFlight++;
+            return true;
+        }
+        waiting[TuplePriority.of((Tuple) ev.getData())].add(ev);
+        return false;
+    }
+
+    // Frees the slot of a finished tuple and returns the next tuple to start, highest priority class first
+    SimEvent finished() {
+        updateUtilization();
+        inFlight--;
+        for (ArrayDeque<SimEvent> queue : waiting) {
+            if (!queue.isEmpty()) {
+                inFlight++;
+                return queue.poll();
+            }
+        }
+        return null;
+    }
+
+    // Changes the shedding thresholds for the following arrivals, e.g. in a branch resumed from a checkpoint
+    void setThresholds(int queueDepth, double utilizationThreshold) {
+        this.queueDepth = queueDepth;
+        this.utilizationThreshold = utilizationThreshold;
+    }
+
+    int depth() {
+        int depth = inFlight;
+        for (ArrayDeque<SimEvent> queue : waiting) {
+            depth += queue.size();
+        }
+        return depth;
+    }
+
+    // Tuples admitted but not yet started
+    int waiting() {
+        return depth() - inFlight;
+    }
+
+    double utilization() {
+        updateUtilization();
+        return utilization;
+    }
+
+    private void updateUtilization() {
+        double now = CloudSim.clock();
+        double decay = Math.exp(-(now - lastUpdate) / window);
+        utilization = utilization * decay + (inFlight > 0 ? 1 - decay : 0);
+        lastUpdate = now;
+    }
+}
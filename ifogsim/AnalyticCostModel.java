@@ -0,0 +1,27 @@
+package org.fog.test.perfeval;
+
+public class AnalyticCostModel implements InferenceCostModel {
+
+    // Instructions per tree level visited (load feature, compare, branch), per input feature converted and per call
+    private static final double INSTRUCTIONS_PER_NODE = 25;
+    private static final double INSTRUCTIONS_PER_FEATURE = 40;
+    private static final double INSTRUCTIONS_PER_CALL = 50000;
+
+    // Bytes per stored tree node and the footprint of the inference runtime itself
+    private static final double BYTES_PER_NODE = 12;
+    private static final int RUNTIME_RAM_MB = 30;
+
+    // A prediction walks every tree from the root to a leaf, so its cost grows with trees x depth;
+    // independent of the device, which only changes how fast the instructions run
+    @Override
+    public double cpuPerTuple(ModelDescriptor model, double deviceMips) {
+        double perRow = model.trees * model.maxDepth * INSTRUCTIONS_PER_NODE + model.features * INSTRUCTIONS_PER_FEATURE;
+        double instructions = INSTRUCTIONS_PER_CALL + model.batchSize * perRow;
+        return instructions / 1e6 * TIME_UNITS_PER_SECOND;
+    }
+
+    @Override
+    public int ramMb(ModelDescriptor model) {
+        return RUNTIME_RAM_MB + (int) Math.ceil(model.nodes() * BYTES_PER_NODE / (1 << 20));
+    }
+}
@@ -0,0 +1,89 @@
+package org.fog.test.perfeval;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.*;
+import java.util.*;
+
+public class CalibratedCostModel implements InferenceCostModel {
+
+    final String name;
+
+    // Latency (simulation time units) = fixed + perRow x batch size, fitted to the measurements
+    private final double fixed;
+    private final double perRow;
+
+    // Model the measurements were taken with; per-row cost is scaled to other tree counts and depths
+    private final int trees;
+    private final int maxDepth;
+    private final int ramMb;
+
+    // Loads a profile measured on real hardware, e.g.
+    //   name=rpi4-flask
+    //   trees=200
+    //   maxDepth=6
+    //   ramMb=120
+    //   batch.1=2.4
+    //   batch.32=5.9
+    // where batch.N is the measured latency (ms) of predicting N feature vectors in one call
+    static CalibratedCostModel load(String file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader in = Files.newBufferedReader(Paths.get(file))) {
+            properties.load(in);
+        }
+
+        List<double[]> points = new ArrayList<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith("batch.")) {
+                points.add(new double[]{Double.parseDouble(key.substring(6)), Double.parseDouble(properties.getProperty(key))});
+            }
+        }
+        if (points.isEmpty()) {
+            throw new IllegalArgumentException("Profile " + file + " has no batch.N latency measurements");
+        }
+
+        return new CalibratedCostModel(properties.getProperty("name", file), points,
+                Integer.parseInt(properties.getProperty("trees", "200")),
+                Integer.parseInt(properties.getProperty("maxDepth", "6")),
+                Integer.parseInt(properties.getProperty("ramMb", "0")));
+    }
+
+    CalibratedCostModel(String name, List<double[]> points, int trees, int maxDepth, int ramMb) {
+        this.name = name;
+        this.trees = trees;
+        this.maxDepth = maxDepth;
+        this.ramMb = ramMb;
+
+        // Least-squares line through (batch size, latency); a single point is all per-row cost
+        double n = points.size();
+        double sumX = 0, sumY = 0, sumXY = 0, sumXX = 0;
+        for (double[] point : points) {
+            sumX += point[0];
+            sumY += point[1];
+            sumXY += point[0] * point[1];
+            sumXX += point[0] * point[0];
+        }
+        double denominator = n * sumXX - sumX * sumX;
+        if (points.size() < 2 || denominator == 0) {
+            fixed = 0;
+            perRow = sumY / sumX;
+        } else {
+            double slope = (n * sumXY - sumX * sumY) / denominator;
+            perRow = Math.max(0, slope);
+            fixed = Math.max(0, (sumY - perRow * sumX) / n);
+        }
+    }
+
+    // The profile was measured on hardware like this device, so its latency turns into the MI that take
+    // exactly that long at the device's MIPS
+    @Override
+    public double cpuPerTuple(ModelDescriptor model, double deviceMips) {
+        double scale = (double) model.trees * model.maxDepth / ((double) trees * maxDepth);
+        return (fixed + perRow * scale * model.batchSize) * deviceMips;
+    }
+
+    @Override
+    public int ramMb(ModelDescriptor model) {
+        return ramMb > 0 ? ramMb : new AnalyticCostModel().ramMb(model);
+    }
+}
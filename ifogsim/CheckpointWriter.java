@@ -0,0 +1,73 @@
+package org.fog.test.perfeval;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.SimEntity;
+import org.cloudbus.cloudsim.core.SimEvent;
+
+public class CheckpointWriter extends SimEntity {
+
+    // Event tag outside the range used by FogEvents
+    private static final int CHECKPOINT = 9004;
+
+    private final SimulationConfig config;
+
+    // Snapshots the whole simulation every checkpointInterval of simulated time into checkpointDir and keeps the
+    // newest checkpointKeep files. The options are read at every checkpoint, so a resumed run can change them.
+    public CheckpointWriter(String name, SimulationConfig config) {
+        super(name);
+        this.config = config;
+    }
+
+    @Override
+    public void startEntity() {
+        send(getId(), config.checkpointInterval, CHECKPOINT);
+    }
+
+    @Override
+    public void processEvent(SimEvent ev) {
+        // A run resumed with --checkpointInterval=0 stops writing checkpoints
+        if (ev.getTag() == CHECKPOINT && config.checkpointInterval > 0) {
+            // Scheduled before the snapshot is taken, so a resumed run keeps writing checkpoints
+            send(getId(), config.checkpointInterval, CHECKPOINT);
+            try {
+                write();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void write() throws IOException {
+        Path dir = Paths.get(config.checkpointDir);
+        Files.createDirectories(dir);
+        Path file = dir.resolve(String.format("checkpoint-%012d.snap", Math.round(CloudSim.clock())));
+        Path partial = dir.resolve(file.getFileName() + ".partial");
+
+        // Written under another name first, so a crash while writing leaves the previous checkpoint usable
+        long start = System.nanoTime();
+        SimulationMetrics.getInstance().flushUtilizationLog();
+        int objects = Snapshot.write(partial);
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        System.out.println("Checkpoint at " + CloudSim.clock() + ": " + objects + " objects, " + Files.size(file)
+                + " bytes in " + (System.nanoTime() - start) / 1000000 + " ms -> " + file);
+
+        List<Path> checkpoints;
+        try (Stream<Path> files = Files.list(dir)) {
+            checkpoints = files.filter(f -> f.getFileName().toString().matches("checkpoint-\\d+\\.snap"))
+                    .sorted().collect(Collectors.toList());
+        }
+        for (int i = 0; i < checkpoints.size() - config.checkpointKeep; i++) {
+            Files.delete(checkpoints.get(i));
+        }
+    }
+
+    @Override
+    public void shutdownEntity() {
+    }
+}
@@ -0,0 +1,44 @@
+package org.fog.test.perfeval;
+
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.fog.utils.distribution.Distribution;
+
+public class DiurnalDistribution extends Distribution {
+
+    // Distribution type next to iFogSim's and TraceDistribution's
+    public static final int DIURNAL = 5;
+
+    // Lowest relative load, so a full amplitude slows the sensors down at night instead of stopping them
+    private static final double MIN_LOAD = 0.05;
+
+    private final Distribution base;
+    private final double period;
+    private final double amplitude;
+
+    // Divides the inter-arrival times of base by the load at the time of the reading: a day of `period` simulated
+    // time starts at its lowest load and peaks halfway through, and the load averages 1 over the day
+    public DiurnalDistribution(Distribution base, double period, double amplitude) {
+        this.base = base;
+        this.period = period;
+        this.amplitude = amplitude;
+    }
+
+    static double load(double time, double period, double amplitude) {
+        return Math.max(MIN_LOAD, 1 - amplitude * Math.cos(2 * Math.PI * time / period));
+    }
+
+    @Override
+    public double getNextValue() {
+        return base.getNextValue() / load(CloudSim.clock(), period, amplitude);
+    }
+
+    @Override
+    public int getDistributionType() {
+        return DIURNAL;
+    }
+
+    @Override
+    public double getMeanInterTransmitTime() {
+        return base.getMeanInterTransmitTime();
+    }
+}
@@ -0,0 +1,186 @@
+package org.fog.test.perfeval;
+
+import java.util.*;
+
+import org.cloudbus.cloudsim.Log;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.SimEntity;
+import org.cloudbus.cloudsim.core.SimEvent;
+
+public class EdgeAutoscaler extends SimEntity {
+
+    // Event tags outside the range used by FogEvents
+    private static final int AUTOSCALE = 9005;
+    private static final int EDGE_READY = 9006;
+
+    private static final double MS_PER_HOUR = 3600000;
+
+    private final SmartHealthTopology topology;
+    private final SimulationConfig config;
+
+    // Edges serving gateways, edges still booting and edges finishing the tuples they hold before powering down
+    private final List<SmartHealthFogDevice> active = new ArrayList<>();
+    private final List<SmartHealthFogDevice> booting = new ArrayList<>();
+    private final List<SmartHealthFogDevice> draining = new ArrayList<>();
+
+    // MI started on every edge up to the previous interval
+    private final Map<Integer, Double> startedMi = new HashMap<>();
+
+    // Simulated time edges were powered, summed over the edges, up to lastUpdate
+    private double poweredTime = 0;
+    private double lastUpdate = 0;
+
+    long scaleUps = 0;
+    long scaleDowns = 0;
+    long sloViolations = 0;
+
+    // Starts with every edge of the topology powered and serving its own gateways
+    public EdgeAutoscaler(String name, SmartHealthTopology topology, SimulationConfig config) {
+        super(name);
+        this.topology = topology;
+        this.config = config;
+        active.addAll(topology.edges);
+    }
+
+    @Override
+    public void startEntity() {
+        SimulationMetrics.getInstance().takeIntervalLoopLatency();
+        send(getId(), config.autoscaleInterval, AUTOSCALE);
+    }
+
+    @Override
+    public void processEvent(SimEvent ev) {
+        switch (ev.getTag()) {
+            case AUTOSCALE:
+                updatePoweredTime();
+                autoscale();
+                send(getId(), config.autoscaleInterval, AUTOSCALE);
+                break;
+            case EDGE_READY:
+                SmartHealthFogDevice edge = (SmartHealthFogDevice) ev.getData();
+                booting.remove(edge);
+                active.add(edge);
+                rebalance();
+                Log.printLine("Autoscaler: " + edge.getName() + " serves " + topology.getChildren(edge).size() + " gateways");
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Powers down the edges drained during the last interval, then scales on the utilization of the active edges
+    // and the loop p99 of the interval. Scaling down needs the remaining edges to stay below scaleUpUtilization, so
+    // the fleet does not oscillate, and nothing is scaled while an edge is still booting.
+    private void autoscale() {
+        for (SmartHealthFogDevice edge : draining) {
+            edge.setPoweredOn(false, config.edgeSleepPower);
+        }
+        draining.clear();
+
+        double work = 0;
+        double capacity = 0;
+        for (SmartHealthFogDevice edge : topology.edges) {
+            double previous = startedMi.getOrDefault(edge.getId(), 0.0);
+            startedMi.put(edge.getId(), edge.startedMi);
+            if (active.contains(edge)) {
+                work += edge.startedMi - previous;
+                capacity += edge.getHost().getTotalMips() * config.autoscaleInterval;
+            }
+        }
+        double utilization = capacity == 0 ? 0 : work / capacity;
+
+        LatencyHistogram latency = SimulationMetrics.getInstance().takeIntervalLoopLatency();
+        boolean sloMissed = config.latencySlo > 0 && latency.getTotalCount() > 0
+                && latency.getValueAtPercentile(99) > config.latencySlo;
+        if (sloMissed) {
+            sloViolations++;
+        }
+
+        if (!booting.isEmpty()) {
+            return;
+        }
+        if (sloMissed || utilization > config.scaleUpUtilization) {
+            powerUp(utilization);
+        } else if (active.size() > config.minEdges && utilization < config.scaleDownUtilization
+                && utilization * active.size() / (active.size() - 1) < config.scaleUpUtilization) {
+            powerDown(utilization);
+        }
+    }
+
+    // Boots the first powered-down edge; it takes over gateways once it is ready
+    private void powerUp(double utilization) {
+        for (SmartHealthFogDevice edge : topology.edges) {
+            if (!edge.isPoweredOn()) {
+                edge.setPoweredOn(true, config.edgeSleepPower);
+                booting.add(edge);
+                scaleUps++;
+                send(getId(), config.edgeBootTime, EDGE_READY, edge);
+                Log.printLine("Autoscaler: powering up " + edge.getName() + " at utilization " + utilization);
+                return;
+            }
+        }
+    }
+
+    // Moves the gateways of the last active edge to the others; it powers down once its tuples had an interval to finish
+    private void powerDown(double utilization) {
+        SmartHealthFogDevice edge = active.get(0);
+        for (SmartHealthFogDevice candidate : active) {
+            if (topology.edges.indexOf(candidate) > topology.edges.indexOf(edge)) {
+                edge = candidate;
+            }
+        }
+        active.remove(edge);
+        rebalance();
+        draining.add(edge);
+        scaleDowns++;
+        Log.printLine("Autoscaler: powering down " + edge.getName() + " at utilization " + utilization);
+    }
+
+    // Spreads the gateways evenly over the active edges, moving only the gateways of inactive edges and those above
+    // an edge's share; edges with the most gateways keep the larger shares
+    private void rebalance() {
+        active.sort(Comparator.comparingInt((SmartHealthFogDevice edge) -> topology.getChildren(edge).size()).reversed());
+        int gateways = topology.gateways.size();
+        int[] shares = new int[active.size()];
+        for (int i = 0; i < shares.length; i++) {
+            shares[i] = gateways / shares.length + (i < gateways % shares.length ? 1 : 0);
+        }
+
+        Deque<SmartHealthFogDevice> moving = new ArrayDeque<>();
+        for (SmartHealthFogDevice edge : topology.edges) {
+            List<SmartHealthFogDevice> children = topology.getChildren(edge);
+            int index = active.indexOf(edge);
+            int keep = index < 0 ? 0 : shares[index];
+            for (int i = children.size() - 1; i >= keep; i--) {
+                moving.add(children.get(i));
+            }
+        }
+        for (int i = 0; i < shares.length; i++) {
+            SmartHealthFogDevice edge = active.get(i);
+            while (topology.getChildren(edge).size() < shares[i] && !moving.isEmpty()) {
+                topology.rehome(moving.poll(), edge);
+            }
+        }
+    }
+
+    private void updatePoweredTime() {
+        double now = CloudSim.clock();
+        poweredTime += (now - lastUpdate) * (active.size() + booting.size() + draining.size());
+        lastUpdate = now;
+    }
+
+    // Edge-hours powered so far, including boot and drain time
+    double getPoweredEdgeHours() {
+        updatePoweredTime();
+        return poweredTime / MS_PER_HOUR;
+    }
+
+    double getAveragePoweredEdges() {
+        updatePoweredTime();
+        return lastUpdate == 0 ? active.size() : poweredTime / lastUpdate;
+    }
+
+    @Override
+    public void shutdownEntity() {
+    }
+}
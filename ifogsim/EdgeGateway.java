@@ -0,0 +1,273 @@
+package org.fog.test.perfeval;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class EdgeGateway {
+
+    private static final byte[] PREDICTION_KEY = "{\"glucose_prediction\": ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LATENCY_KEY = ", \"latency_seconds\": ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] BATCH_KEY = ", \"batch_size\": ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PATIENTS_KEY = "{\"patients\": [".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PREDICTIONS_KEY = "], \"glucose_predictions\": [".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FRAME_LATENCY_KEY = "], \"latency_seconds\": ".getBytes(StandardCharsets.US_ASCII);
+
+    // Binary SensorRecordCodec frames are posted with this content type; anything else is read as JSON
+    private static final String FRAME_TYPE = "application/octet-stream";
+
+    private final PredictionBatcher batcher;
+
+    // Idle request objects; when empty a new one is created and it joins the pool afterwards
+    private final ArrayBlockingQueue<PredictionBatcher.Request> pool;
+
+    EdgeGateway(PredictionBatcher batcher, int poolSize) {
+        this.batcher = batcher;
+        this.pool = new ArrayBlockingQueue<>(poolSize);
+    }
+
+    // Drop-in replacement for edge_node.py: the same POST /predict payload and response, served by the
+    // SensorReader (FeatureParser) -> Predictor (PredictionBatcher, TreeEnsemble) pipeline of SmartHealthSim
+    public static void main(String[] args) throws Exception {
+        String model = null;
+        int port = 5000;
+        int workers = Runtime.getRuntime().availableProcessors();
+        int maxBatch = 64;
+        long batchWaitMicros = 100;
+        int queueCapacity = 65536;
+        int threads = 256;
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value but got: " + arg);
+            }
+            String name = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            switch (name) {
+                case "model": model = value; break;
+                case "port": port = Integer.parseInt(value); break;
+                case "workers": workers = Integer.parseInt(value); break;
+                case "maxBatch": maxBatch = Integer.parseInt(value); break;
+                case "batchWaitMicros": batchWaitMicros = Long.parseLong(value); break;
+                case "queueCapacity": queueCapacity = Integer.parseInt(value); break;
+                case "threads": threads = Integer.parseInt(value); break;
+                default: throw new IllegalArgumentException("Unknown option: --" + name);
+            }
+        }
+        if (model == null) {
+            throw new IllegalArgumentException("--model=<XGBoost JSON model> is required, see export_model.py");
+        }
+
+        TreeEnsemble ensemble = TreeEnsemble.load(Paths.get(model));
+        if (ensemble.features != PatientVitals.FEATURES.length) {
+            throw new IllegalArgumentException("Model expects " + ensemble.features + " features, the payload has "
+                    + PatientVitals.FEATURES.length);
+        }
+        EdgeGateway gateway = new EdgeGateway(new PredictionBatcher(ensemble, workers, maxBatch, batchWaitMicros, queueCapacity),
+                queueCapacity);
+
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 4096);
+        server.createContext("/predict", gateway::predict);
+        server.createContext("/stats", gateway::stats);
+        server.createContext("/", gateway::index);
+        server.setExecutor(connectionExecutor(threads));
+        server.start();
+        System.out.println("Edge gateway serving " + ensemble.trees() + " trees on port " + port);
+    }
+
+    // One virtual thread per connection on Java 21+, a bounded thread pool on older runtimes
+    private static ExecutorService connectionExecutor(int threads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(threads);
+        }
+    }
+
+    private void predict(HttpExchange exchange) throws IOException {
+        PredictionBatcher.Request request = pool.poll();
+        if (request == null) {
+            request = new PredictionBatcher.Request(PatientVitals.FEATURES.length);
+        }
+        boolean reusable = true;
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "{\"error\": \"POST a JSON object to /predict\"}");
+                return;
+            }
+            int length = readBody(exchange.getRequestBody(), request);
+            if (FRAME_TYPE.equals(exchange.getRequestHeaders().getFirst("Content-Type"))) {
+                predictFrame(exchange, request, length);
+                return;
+            }
+            long start = System.nanoTime();
+            int missing = request.parser.parse(request.buffer, length, request.features, 0);
+            if (missing >= 0) {
+                respond(exchange, 400, "{\"error\": \"'" + PatientVitals.FEATURES[missing] + "'\"}");
+                return;
+            }
+            batcher.predict(request);
+            double latency = (System.nanoTime() - start) / 1e9;
+
+            int n = write(request.response, 0, PREDICTION_KEY);
+            n = writeFixed(request.response, n, request.prediction, 2);
+            n = write(request.response, n, LATENCY_KEY);
+            n = writeFixed(request.response, n, latency, 6);
+            n = write(request.response, n, BATCH_KEY);
+            n = writeFixed(request.response, n, request.batchSize, 0);
+            request.response[n++] = '}';
+
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, n);
+            exchange.getResponseBody().write(request.response, 0, n);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            respond(exchange, 400, "{\"error\": \"Malformed JSON\"}");
+        } catch (InterruptedException e) {
+            // The request may still be queued or in a worker's batch, which will write to it, so it is left to the
+            // garbage collector instead of the pool
+            reusable = false;
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, "{\"error\": \"Interrupted\"}");
+        } finally {
+            exchange.close();
+            if (reusable) {
+                pool.offer(request);
+            }
+        }
+    }
+
+    // Predicts every record of a binary frame as one batch and answers with the patients and predictions in frame order
+    private void predictFrame(HttpExchange exchange, PredictionBatcher.Request request, int length) throws IOException {
+        long start = System.nanoTime();
+        int rows;
+        try {
+            rows = SensorRecordCodec.records(request.buffer, length);
+            request.ensureFrameCapacity(rows);
+            request.codec.decode(request.buffer, length, request.framePatients, request.frameTimes, request.frameFeatures);
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, "{\"error\": \"Malformed frame: " + e.getMessage() + "\"}");
+            return;
+        }
+        int width = PatientVitals.FEATURES.length;
+        for (int i = 0; i < rows * width; i++) {
+            if (Float.isNaN(request.frameFeatures[i])) {
+                respond(exchange, 400, "{\"error\": \"'" + PatientVitals.FEATURES[i % width] + "' missing in record "
+                        + i / width + "\"}");
+                return;
+            }
+        }
+        batcher.predictFrame(request, rows);
+        double latency = (System.nanoTime() - start) / 1e9;
+
+        byte[] out = request.response;
+        int n = write(out, 0, PATIENTS_KEY);
+        for (int r = 0; r < rows; r++) {
+            if (r > 0) {
+                out[n++] = ',';
+                out[n++] = ' ';
+            }
+            n = writeFixed(out, n, request.framePatients[r], 0);
+        }
+        n = write(out, n, PREDICTIONS_KEY);
+        for (int r = 0; r < rows; r++) {
+            if (r > 0) {
+                out[n++] = ',';
+                out[n++] = ' ';
+            }
+            n = writeFixed(out, n, request.framePredictions[r], 2);
+        }
+        n = write(out, n, FRAME_LATENCY_KEY);
+        n = writeFixed(out, n, latency, 6);
+        n = write(out, n, BATCH_KEY);
+        n = writeFixed(out, n, rows, 0);
+        out[n++] = '}';
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, n);
+        exchange.getResponseBody().write(out, 0, n);
+    }
+
+    private void stats(HttpExchange exchange) throws IOException {
+        long predictions = batcher.predictions.sum();
+        long batches = batcher.batches.sum();
+        respond(exchange, 200, "{\"predictions\": " + predictions + ", \"batches\": " + batches
+                + ", \"mean_batch_size\": " + (batches == 0 ? 0 : (double) predictions / batches) + "}");
+        exchange.close();
+    }
+
+    private void index(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/html");
+        byte[] page = ("<h2>Edge Gateway is Running</h2>"
+                + "<p>This server accepts sensor data via <code>POST /predict</code>, with the same JSON payload as "
+                + "edge_node.py: " + String.join(", ", PatientVitals.FEATURES) + ", or a binary frame of such records "
+                + "with Content-Type " + FRAME_TYPE + ".</p>"
+                + "<p>Throughput counters are at <code>GET /stats</code>.</p>").getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, page.length);
+        exchange.getResponseBody().write(page);
+        exchange.close();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    // Reads the whole body into the request's buffer, growing it for unusually large payloads
+    private static int readBody(InputStream in, PredictionBatcher.Request request) throws IOException {
+        int length = 0;
+        int read;
+        while ((read = in.read(request.buffer, length, request.buffer.length - length)) > 0) {
+            length += read;
+            if (length == request.buffer.length) {
+                request.buffer = Arrays.copyOf(request.buffer, length * 2);
+            }
+        }
+        return length;
+    }
+
+    private static int write(byte[] out, int position, byte[] bytes) {
+        System.arraycopy(bytes, 0, out, position, bytes.length);
+        return position + bytes.length;
+    }
+
+    // Writes the value rounded to the given decimals without going through a String
+    private static int writeFixed(byte[] out, int position, double value, int decimals) {
+        if (value < 0) {
+            out[position++] = '-';
+            value = -value;
+        }
+        long factor = 1;
+        for (int i = 0; i < decimals; i++) {
+            factor *= 10;
+        }
+        long scaled = Math.round(value * factor);
+        long integer = scaled / factor;
+        long fraction = scaled % factor;
+
+        int digits = 1;
+        for (long i = integer; i >= 10; i /= 10) {
+            digits++;
+        }
+        for (int i = digits - 1; i >= 0; i--) {
+            out[position + i] = (byte) ('0' + integer % 10);
+            integer /= 10;
+        }
+        position += digits;
+        if (decimals > 0) {
+            out[position++] = '.';
+            for (int i = decimals - 1; i >= 0; i--) {
+                out[position + i] = (byte) ('0' + fraction % 10);
+                fraction /= 10;
+            }
+            position += decimals;
+        }
+        return position;
+    }
+}
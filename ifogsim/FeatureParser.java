@@ -0,0 +1,263 @@
+package org.fog.test.perfeval;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class FeatureParser {
+
+    // Feature names as bytes, so keys are matched in the request buffer without decoding it
+    private static final byte[][] NAMES = new byte[PatientVitals.FEATURES.length][];
+
+    // Exact powers of ten; a mantissa below 2^53 times one of these is correctly rounded
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        for (int i = 0; i < NAMES.length; i++) {
+            NAMES[i] = PatientVitals.FEATURES[i].getBytes(StandardCharsets.US_ASCII);
+        }
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    // train.py encodes Gender as Male = 1 and Female = 0
+    private static final int GENDER = Arrays.asList(PatientVitals.FEATURES).indexOf("Gender");
+    private static final byte[] MALE = "Male".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FEMALE = "Female".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[][] LITERALS = {"true".getBytes(StandardCharsets.US_ASCII),
+            "false".getBytes(StandardCharsets.US_ASCII), "null".getBytes(StandardCharsets.US_ASCII)};
+
+    // Position in the buffer while parsing; an instance belongs to one request at a time
+    private byte[] buffer;
+    private int position;
+    private int end;
+
+    // Reads the features of one JSON object such as the edge_node.py payload into out, in model order; other keys
+    // (e.g. timestamp_sent) are skipped. Returns the index of the first missing feature, -1 if all were present,
+    // and throws IllegalArgumentException for malformed JSON, including anything after the object. Nothing is
+    // allocated on the common path. The buffer is pooled, so nothing past length is ever read.
+    int parse(byte[] buffer, int length, float[] out, int offset) {
+        this.buffer = buffer;
+        this.position = 0;
+        this.end = length;
+        Arrays.fill(out, offset, offset + NAMES.length, Float.NaN);
+
+        expect('{');
+        if (peek() == '}') {
+            position++;
+        } else {
+            do {
+                int feature = readKey();
+                expect(':');
+                if (feature < 0) {
+                    skipValue();
+                } else if (peek() == '"') {
+                    out[offset + feature] = readCategory(feature);
+                } else {
+                    out[offset + feature] = (float) readNumber();
+                }
+            } while (next() == ',');
+            if (buffer[position - 1] != '}') {
+                throw new IllegalArgumentException("Expected } at " + (position - 1));
+            }
+        }
+        skipWhitespace();
+        if (position < end) {
+            throw new IllegalArgumentException("Unexpected data after the object at " + position);
+        }
+
+        for (int i = 0; i < NAMES.length; i++) {
+            if (Float.isNaN(out[offset + i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Returns the feature index of the key at the position, -1 for other keys
+    private int readKey() {
+        expect('"');
+        int start = position;
+        skipString();
+        int length = position - start - 1;
+        for (int i = 0; i < NAMES.length; i++) {
+            if (NAMES[i].length == length && regionMatches(start, NAMES[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Only Gender may be given as a string; other string values count as missing
+    private float readCategory(int feature) {
+        skipWhitespace();
+        int start = position + 1;
+        skipValue();
+        int length = position - start - 1;
+        if (feature == GENDER && length == MALE.length && regionMatches(start, MALE)) {
+            return 1;
+        }
+        if (feature == GENDER && length == FEMALE.length && regionMatches(start, FEMALE)) {
+            return 0;
+        }
+        return Float.NaN;
+    }
+
+    private boolean regionMatches(int start, byte[] name) {
+        for (int i = 0; i < name.length; i++) {
+            if (buffer[start + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Decimal digits are accumulated into a long and scaled once; numbers with more than 18 digits or a large
+    // exponent fall back to Double.parseDouble. Only JSON numbers are accepted, as by edge_node.py: no sign but -,
+    // no leading zeros, and at least one digit before and after the point and in the exponent.
+    private double readNumber() {
+        skipWhitespace();
+        int start = position;
+        boolean negative = position < end && buffer[position] == '-';
+        if (negative) {
+            position++;
+        }
+        int integerStart = position;
+        int integerDigits = 0;
+        int fractionDigits = 0;
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean fraction = false;
+        while (position < end) {
+            byte b = buffer[position];
+            if (b >= '0' && b <= '9') {
+                if (fraction) {
+                    fractionDigits++;
+                } else {
+                    integerDigits++;
+                }
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    if (fraction) {
+                        scale--;
+                    }
+                } else if (!fraction) {
+                    scale++;
+                }
+            } else if (b == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+            position++;
+        }
+        if (integerDigits == 0 || (fraction && fractionDigits == 0)
+                || (integerDigits > 1 && buffer[integerStart] == '0')) {
+            throw new IllegalArgumentException("Expected a number at " + start);
+        }
+        if (position < end && (buffer[position] == 'e' || buffer[position] == 'E')) {
+            position++;
+            boolean negativeExponent = false;
+            if (position < end && (buffer[position] == '-' || buffer[position] == '+')) {
+                negativeExponent = buffer[position++] == '-';
+            }
+            int exponentStart = position;
+            int exponent = 0;
+            while (position < end && buffer[position] >= '0' && buffer[position] <= '9') {
+                exponent = Math.min(exponent * 10 + (buffer[position++] - '0'), 1000);
+            }
+            if (position == exponentStart) {
+                throw new IllegalArgumentException("Expected an exponent at " + position);
+            }
+            scale += negativeExponent ? -exponent : exponent;
+        }
+
+        double value;
+        if (digits >= 18 || Math.abs(scale) >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(new String(buffer, start, position - start, StandardCharsets.US_ASCII));
+        }
+        value = scale < 0 ? mantissa / POWERS_OF_TEN[-scale] : mantissa * POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    // Skips a string, number, literal, object or array. Numbers and literals are checked; objects and arrays are
+    // only matched bracket for bracket.
+    private void skipValue() {
+        byte b = peek();
+        if (b == '"') {
+            position++;
+            skipString();
+        } else if (b == '{' || b == '[') {
+            int depth = 0;
+            do {
+                b = peek();
+                if (b == '"') {
+                    position++;
+                    skipString();
+                    continue;
+                }
+                if (b == '{' || b == '[') {
+                    depth++;
+                } else if (b == '}' || b == ']') {
+                    depth--;
+                }
+                position++;
+            } while (depth > 0);
+        } else if (b == '-' || (b >= '0' && b <= '9')) {
+            readNumber();
+        } else {
+            for (byte[] literal : LITERALS) {
+                if (end - position >= literal.length && regionMatches(position, literal)) {
+                    position += literal.length;
+                    return;
+                }
+            }
+            throw new IllegalArgumentException("Unexpected " + (char) b + " at " + position);
+        }
+    }
+
+    // Skips the rest of a string whose opening quote was read, up to and including the closing quote
+    private void skipString() {
+        while (position < end && buffer[position] != '"') {
+            position += buffer[position] == '\\' ? 2 : 1;
+        }
+        if (position >= end) {
+            throw new IllegalArgumentException("Unterminated string");
+        }
+        position++;
+    }
+
+    private void expect(char c) {
+        if (next() != c) {
+            throw new IllegalArgumentException("Expected " + c + " at " + (position - 1));
+        }
+    }
+
+    private byte next() {
+        skipWhitespace();
+        if (position >= end) {
+            throw new IllegalArgumentException("Unexpected end of input");
+        }
+        return buffer[position++];
+    }
+
+    private byte peek() {
+        skipWhitespace();
+        if (position >= end) {
+            throw new IllegalArgumentException("Unexpected end of input");
+        }
+        return buffer[position];
+    }
+
+    private void skipWhitespace() {
+        while (position < end && (buffer[position] == ' ' || buffer[position] == '\n' || buffer[position] == '\r'
+                || buffer[position] == '\t')) {
+            position++;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package org.fog.test.perfeval;
+
+import java.util.*;
+
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.fog.entities.Tuple;
+
+public class FusingApplication extends SmartHealthApplication {
+
+    // Fusion modes: one PREDICTION_TASK per batch of readings or per time window
+    static final String COUNT = "count";
+    static final String WINDOW = "window";
+
+    // Module whose output is fused
+    private static final String FUSED_MODULE = "SensorReader";
+
+    private final String mode;
+    private final int batchSize;
+    private final double window;
+
+    // One buffer per patient, so a feature vector never mixes the readings of patients sharing a gateway
+    private final Map<Integer, FusionBuffer> buffers = new HashMap<>();
+
+    // Totals reported at the end of the run; readings still buffered when it ends are not fused
+    long readings = 0;
+    long fusedReadings = 0;
+    long fusedTasks = 0;
+    double totalWait = 0;
+
+    public FusingApplication(String appId, int userId, String mode, int batchSize, double window) {
+        super(appId, userId);
+        if (!COUNT.equals(mode) && !WINDOW.equals(mode)) {
+            throw new IllegalArgumentException("Unknown fusion mode: " + mode);
+        }
+        this.mode = mode;
+        this.batchSize = batchSize;
+        this.window = window;
+    }
+
+    // SensorReader output is buffered into one feature-vector tuple per batch or window instead of one
+    // PREDICTION_TASK per reading; every other module keeps the selectivity defined in createApplication
+    @Override
+    protected List<Tuple> emitTuples(String moduleName, Tuple inputTuple, int sourceDeviceId, int sourceModuleId) {
+        if (!FUSED_MODULE.equals(moduleName)) {
+            return super.emitTuples(moduleName, inputTuple, sourceDeviceId, sourceModuleId);
+        }
+
+        double now = CloudSim.clock();
+        // Readings in flight when a checkpoint was written are not registered after a resume; those are fused per
+        // gateway
+        PatientTuples.Reading reading = PatientTuples.get(inputTuple);
+        int key = reading != null ? reading.patient : -1 - sourceDeviceId;
+        FusionBuffer buffer = buffers.computeIfAbsent(key, id -> new FusionBuffer());
+
+        // The first reading of a window asks the gateway to close the window when it ends
+        if (WINDOW.equals(mode) && buffer.count == 0) {
+            ((SmartHealthFogDevice) CloudSim.getEntity(sourceDeviceId)).scheduleFusionWindow(window, buffer);
+        }
+        buffer.count++;
+        buffer.arrivalSum += now;
+        buffer.priority = Math.min(buffer.priority, TuplePriority.of(inputTuple));
+        if (reading != null) {
+            buffer.reading = reading;
+        }
+        buffer.template = inputTuple;
+        buffer.deviceId = sourceDeviceId;
+        buffer.moduleId = sourceModuleId;
+        readings++;
+
+        if (COUNT.equals(mode) && buffer.count >= batchSize) {
+            return flush(buffer, now, moduleName, inputTuple, sourceDeviceId, sourceModuleId);
+        }
+        return Collections.emptyList();
+    }
+
+    // Called by the gateway when the window of a buffer ends; returns the feature vector of the readings buffered
+    // in it, built from the latest one as if SensorReader had just finished it
+    List<Tuple> closeWindow(FusionBuffer buffer) {
+        if (buffer.count == 0) {
+            return Collections.emptyList();
+        }
+        List<Tuple> tuples = flush(buffer, CloudSim.clock(), FUSED_MODULE, buffer.template, buffer.deviceId, buffer.moduleId);
+        countEmitted(tuples);
+        return tuples;
+    }
+
+    private List<Tuple> flush(FusionBuffer buffer, double now, String moduleName, Tuple inputTuple,
+                              int sourceDeviceId, int sourceModuleId) {
+        // The loop delay starts when SensorReader emits, so the time readings spend buffered is tracked here
+        totalWait += buffer.count * now - buffer.arrivalSum;
+        fusedReadings += buffer.count;
+        int priority = buffer.priority;
+        PatientTuples.Reading reading = buffer.reading;
+        buffer.count = 0;
+        buffer.arrivalSum = 0;
+        buffer.priority = TuplePriority.ROUTINE;
+        buffer.reading = null;
+        buffer.template = null;
+
+        // A feature vector is critical if any of its readings is. It carries the patient's values as of the latest
+        // buffered reading: every stream of a patient updates the same vitals, so those hold all of its features.
+        List<Tuple> tuples = super.emitTuples(moduleName, inputTuple, sourceDeviceId, sourceModuleId);
+        for (Tuple tuple : tuples) {
+            TuplePriority.set(tuple, priority);
+            if (reading != null) {
+                PatientTuples.register(tuple, reading);
+            }
+        }
+        fusedTasks += tuples.size();
+        return tuples;
+    }
+
+    // Mean time a fused reading waited in the buffer before its feature vector was sent to the Predictor
+    double getAverageWait() {
+        return fusedReadings == 0 ? 0 : totalWait / fusedReadings;
+    }
+
+    // Readings of one patient waiting to be fused, and the latest of them with the gateway and SensorReader instance
+    // that finished it
+    static class FusionBuffer {
+        int count;
+        double arrivalSum;
+        int priority = TuplePriority.ROUTINE;
+        PatientTuples.Reading reading;
+        Tuple template;
+        int deviceId;
+        int moduleId;
+    }
+}
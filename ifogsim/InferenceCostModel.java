@@ -0,0 +1,14 @@
+package org.fog.test.perfeval;
+
+public interface InferenceCostModel {
+
+    // Simulation time units per second; uplink latencies such as 100 (edge -> cloud) are in milliseconds
+    double TIME_UNITS_PER_SECOND = 1000;
+
+    // CPU length of one PREDICTION_TASK on a device of the given MIPS, scaled so that length / MIPS is the
+    // inference latency in simulation time units
+    double cpuPerTuple(ModelDescriptor model, double deviceMips);
+
+    // RAM (MB) of a Predictor module instance holding the model
+    int ramMb(ModelDescriptor model);
+}
@@ -0,0 +1,87 @@
+package org.fog.test.perfeval;
+
+import java.util.Arrays;
+
+public class LatencyHistogram {
+
+    // 2048 sub-buckets per power of two keep every recorded value within 0.1% (three significant digits),
+    // the same log-linear layout HdrHistogram uses
+    private static final int SUB_BUCKET_BITS = 11;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT / 2;
+
+    // Smallest distinguishable value, in simulation time units
+    private final double unit;
+
+    private long[] counts = new long[SUB_BUCKET_COUNT];
+    private long totalCount = 0;
+    private double sum = 0;
+    private double max = 0;
+
+    public LatencyHistogram() {
+        this(0.001);
+    }
+
+    public LatencyHistogram(double unit) {
+        this.unit = unit;
+    }
+
+    void recordValue(double value) {
+        long scaled = Math.max(0, Math.round(value / unit));
+        int index = indexOf(scaled);
+        if (index >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(index + 1, counts.length * 2));
+        }
+        counts[index]++;
+        totalCount++;
+        sum += value;
+        max = Math.max(max, value);
+    }
+
+    // Values below SUB_BUCKET_COUNT are stored exactly; above that each power of two adds half a bucket set
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift);
+        return SUB_BUCKET_COUNT + (shift - 1) * HALF_SUB_BUCKET_COUNT + (subBucket - HALF_SUB_BUCKET_COUNT);
+    }
+
+    // Highest value that falls into the same bucket as the given index
+    private static long highestValueAt(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / HALF_SUB_BUCKET_COUNT + 1;
+        long subBucket = (index - SUB_BUCKET_COUNT) % HALF_SUB_BUCKET_COUNT + HALF_SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    double getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(highestValueAt(i) * unit, max);
+            }
+        }
+        return max;
+    }
+
+    long getTotalCount() {
+        return totalCount;
+    }
+
+    double getMean() {
+        return totalCount == 0 ? 0 : sum / totalCount;
+    }
+
+    double getMax() {
+        return max;
+    }
+}
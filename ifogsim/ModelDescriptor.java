@@ -0,0 +1,39 @@
+package org.fog.test.perfeval;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.*;
+import java.util.Properties;
+
+public class ModelDescriptor {
+
+    // Defaults describe glucose_model_xgb.pkl as trained by train.py
+    int trees = 200;
+    int maxDepth = 6;
+    int features = 8;
+
+    // Feature vectors predicted per PREDICTION_TASK
+    int batchSize = 1;
+
+    // Reads trees, maxDepth, features and batchSize from a properties file; missing keys keep the defaults
+    static ModelDescriptor load(String file) throws IOException {
+        ModelDescriptor model = new ModelDescriptor();
+        if (file == null) {
+            return model;
+        }
+        Properties properties = new Properties();
+        try (Reader in = Files.newBufferedReader(Paths.get(file))) {
+            properties.load(in);
+        }
+        model.trees = Integer.parseInt(properties.getProperty("trees", String.valueOf(model.trees)));
+        model.maxDepth = Integer.parseInt(properties.getProperty("maxDepth", String.valueOf(model.maxDepth)));
+        model.features = Integer.parseInt(properties.getProperty("features", String.valueOf(model.features)));
+        model.batchSize = Integer.parseInt(properties.getProperty("batchSize", String.valueOf(model.batchSize)));
+        return model;
+    }
+
+    // Nodes of a full binary tree of maxDepth for every tree
+    long nodes() {
+        return (long) trees * ((1L << (maxDepth + 1)) - 1);
+    }
+}
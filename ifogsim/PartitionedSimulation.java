@@ -0,0 +1,269 @@
+package org.fog.test.perfeval;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class PartitionedSimulation {
+
+    // Merged results that are summed over the partitions; all others come from the cloud partition, where every loop
+    // ends and the constant metrics are the same as everywhere else
+    private static final Set<String> SUMMED = new HashSet<>(Arrays.asList("energy", "cloudCost", "networkUsage",
+            "cacheHits", "cacheMisses", "cacheSavedMI", "shedTuples", "offloadedTuples", "sensorReadings",
+            "predictionTasks", "deviceEvents"));
+
+    // Runs one simulation split by edge subtree: every edge partition holds a contiguous range of edges with their
+    // gateways and patients, and the cloud tier is a partition of its own. Tuples only cross between partitions on
+    // the edge-cloud links, so a tuple sent at time t arrives no earlier than t + edgeUplinkLatency. All partitions
+    // run in parallel up to the end of a window of that length, exchange the tuples sent meanwhile, which all arrive
+    // in a later window, and continue.
+    static void run(SimulationConfig config) throws Exception {
+        check(config);
+        int edgePartitions = Math.min(config.partitions, config.edges);
+        double lookahead = config.edgeUplinkLatency;
+
+        List<String> partitionArgs = config.toArgs();
+        partitionArgs.removeIf(arg -> arg.startsWith("--partitions="));
+        String[] args = partitionArgs.toArray(new String[0]);
+
+        // Partition 0 is the cloud tier, partition p > 0 owns edges edgeRange(p)[0] to edgeRange(p)[1] - 1
+        Map<String, Integer> owners = new HashMap<>();
+        owners.put(SmartHealthTopology.CLOUD, 0);
+        List<int[]> edgeRanges = new ArrayList<>();
+        edgeRanges.add(new int[]{0, config.edges});
+        for (int p = 0; p < edgePartitions; p++) {
+            int[] range = {config.edges * p / edgePartitions, config.edges * (p + 1) / edgePartitions};
+            for (int e = range[0]; e < range[1]; e++) {
+                owners.put(SmartHealthTopology.edgeName(e), p + 1);
+            }
+            edgeRanges.add(range);
+        }
+
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(edgeRanges.size());
+        try {
+            URL[] classPath = classPath();
+            List<Callable<Partition>> setUps = new ArrayList<>();
+            for (int p = 0; p < edgeRanges.size(); p++) {
+                boolean cloudTier = p == 0;
+                int[] range = edgeRanges.get(p);
+                setUps.add(() -> new Partition(classPath, args, cloudTier, range[0], range[1]));
+            }
+            List<Partition> partitions = invokeAll(executor, setUps);
+
+            List<List<Object[]>> inboxes = new ArrayList<>();
+            for (int p = 0; p < partitions.size(); p++) {
+                inboxes.add(new ArrayList<>());
+            }
+            int windows = (int) Math.ceil(config.duration / lookahead);
+            for (int w = 1; w <= windows; w++) {
+                double end = Math.min(w * lookahead, config.duration);
+                List<Callable<List<Object[]>>> steps = new ArrayList<>();
+                for (int p = 0; p < partitions.size(); p++) {
+                    Partition partition = partitions.get(p);
+                    List<Object[]> inbox = inboxes.get(p);
+                    steps.add(() -> {
+                        partition.deliver(inbox);
+                        return partition.advance(end);
+                    });
+                }
+                List<List<Object[]>> posted = invokeAll(executor, steps);
+
+                for (List<Object[]> inbox : inboxes) {
+                    inbox.clear();
+                }
+                for (List<Object[]> messages : posted) {
+                    for (Object[] message : messages) {
+                        inboxes.get(owners.get((String) message[SimulationPartition.TARGET])).add(message);
+                    }
+                }
+            }
+
+            List<Map<String, Object>> results = new ArrayList<>();
+            for (Partition partition : partitions) {
+                results.add(partition.finish());
+            }
+            System.out.println("Simulated " + config.duration + " ms in " + partitions.size() + " partitions and " + windows
+                    + " windows of " + lookahead + " ms in " + (System.nanoTime() - start) / 1e9 + " s");
+            report(merge(results), config);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void check(SimulationConfig config) {
+        if (config.edgeUplinkLatency <= 0) {
+            throw new IllegalArgumentException("--partitions needs an --edgeUplinkLatency above 0, it is the lookahead");
+        }
+        if (config.placement.equals("adaptive")) {
+            throw new IllegalArgumentException("--partitions needs --placement=edge or --placement=cloud");
+        }
+        if (config.storageDir != null || config.metricsDir != null || config.checkpointInterval > 0 || config.resumeFrom != null
+                || config.autoscale || config.progressInterval > 0) {
+            throw new IllegalArgumentException("--partitions cannot be combined with --storageDir, --metricsDir, "
+                    + "--checkpointInterval, --resumeFrom, --autoscale or --progressInterval");
+        }
+    }
+
+    // Loop delay and ratios are recomputed from the summed counts instead of being summed themselves
+    private static Map<String, Object> merge(List<Map<String, Object>> results) {
+        Map<String, Object> merged = new LinkedHashMap<>(results.get(0));
+        for (Map.Entry<String, Object> entry : merged.entrySet()) {
+            if (SUMMED.contains(entry.getKey())) {
+                entry.setValue(sum(results, entry.getKey()));
+            }
+        }
+
+        merged.put("loopDelay", weightedAverage(results, "loopDelay", "loops"));
+        if (merged.containsKey("cacheHitRatio")) {
+            long hits = (Long) merged.get("cacheHits");
+            long misses = (Long) merged.get("cacheMisses");
+            merged.put("cacheHitRatio", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+        }
+        if (merged.containsKey("fusionWait")) {
+            merged.put("fusionWait", weightedAverage(results, "fusionWait", "fusedReadings"));
+        }
+        return merged;
+    }
+
+    private static Object sum(List<Map<String, Object>> results, String name) {
+        double total = 0;
+        boolean integral = true;
+        for (Map<String, Object> result : results) {
+            Number value = (Number) result.get(name);
+            total += value.doubleValue();
+            integral &= value instanceof Long || value instanceof Integer;
+        }
+        return integral ? (Object) (long) total : (Object) total;
+    }
+
+    private static double weightedAverage(List<Map<String, Object>> results, String name, String weightName) {
+        double total = 0;
+        double weights = 0;
+        for (Map<String, Object> result : results) {
+            double weight = ((Number) result.get(weightName)).doubleValue();
+            if (weight > 0) {
+                total += ((Number) result.get(name)).doubleValue() * weight;
+                weights += weight;
+            }
+        }
+        return weights == 0 ? Double.NaN : total / weights;
+    }
+
+    // Prints and writes the merged results like SmartHealthController does for a single run
+    private static void report(Map<String, Object> merged, SimulationConfig config) throws IOException {
+        merged.put("networkUsage", ((Number) merged.get("networkUsage")).doubleValue() / config.duration);
+        List<String> lines = new ArrayList<>();
+        for (String name : Arrays.asList("loopDelay", "energy", "cloudCost", "networkUsage")) {
+            lines.add(name + "=" + merged.remove(name));
+        }
+        merged.remove("loops");
+        merged.forEach((name, value) -> lines.add(name + "=" + value));
+
+        for (String line : lines) {
+            System.out.println(line.replaceFirst("=", " = "));
+        }
+        if (config.resultFile != null) {
+            try (PrintWriter out = new PrintWriter(config.resultFile)) {
+                lines.forEach(out::println);
+            }
+        }
+    }
+
+    private static <T> List<T> invokeAll(ExecutorService executor, List<Callable<T>> tasks) throws Exception {
+        List<T> values = new ArrayList<>();
+        for (Future<T> future : executor.invokeAll(tasks)) {
+            try {
+                values.add(future.get());
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+        return values;
+    }
+
+    private static URL[] classPath() throws IOException {
+        String[] entries = System.getProperty("java.class.path").split(File.pathSeparator);
+        URL[] urls = new URL[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            urls[i] = Paths.get(entries[i]).toUri().toURL();
+        }
+        return urls;
+    }
+
+    // A SimulationPartition in its own class loader, called by reflection
+    private static class Partition {
+
+        private final Object partition;
+        private final Method deliver;
+        private final Method advance;
+        private final Method finish;
+
+        Partition(URL[] classPath, String[] args, boolean cloudTier, int firstEdge, int lastEdge) throws Exception {
+            Class<?> type = new PartitionClassLoader(classPath).loadClass(SimulationPartition.class.getName());
+            partition = invoke(() -> type.getConstructor(String[].class, boolean.class, int.class, int.class)
+                    .newInstance(args, cloudTier, firstEdge, lastEdge));
+            deliver = type.getMethod("deliver", List.class);
+            advance = type.getMethod("advance", double.class);
+            finish = type.getMethod("finish");
+        }
+
+        void deliver(List<Object[]> messages) throws Exception {
+            if (!messages.isEmpty()) {
+                invoke(() -> deliver.invoke(partition, messages));
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> advance(double end) throws Exception {
+            return (List<Object[]>) invoke(() -> advance.invoke(partition, end));
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> finish() throws Exception {
+            return (Map<String, Object>) invoke(() -> finish.invoke(partition));
+        }
+
+        // Rethrows what the partition threw instead of the reflection wrapper
+        private static Object invoke(Callable<Object> call) throws Exception {
+            try {
+                return call.call();
+            } catch (InvocationTargetException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+    }
+
+    // Loads CloudSim, iFogSim and this package again for every partition, since all of them keep their state in
+    // static fields; everything else, including the JDK types the partitions are called with, is shared
+    private static class PartitionClassLoader extends URLClassLoader {
+
+        PartitionClassLoader(URL[] classPath) {
+            super(classPath, PartitionedSimulation.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.startsWith("org.cloudbus.") && !name.startsWith("org.fog.")) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> loaded = findLoadedClass(name);
+                if (loaded == null) {
+                    loaded = findClass(name);
+                }
+                if (resolve) {
+                    resolveClass(loaded);
+                }
+                return loaded;
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.fog.test.perfeval;
+
+import org.fog.entities.Sensor;
+import org.fog.entities.Tuple;
+import org.fog.utils.distribution.Distribution;
+
+public class PatientSensor extends Sensor {
+
+    // Vitals of the patient wearing the sensor, null if the run does not track feature values
+    final PatientVitals vitals;
+    final int[] features;
+
+    public PatientSensor(String name, String tupleType, int userId, String appId, Distribution distribution,
+                         PatientVitals vitals) {
+        super(name, tupleType, userId, appId, distribution);
+        this.vitals = vitals;
+        this.features = PatientVitals.featuresOf(tupleType);
+    }
+
+    @Override
+    public void transmit() {
+        if (vitals != null) {
+            readVitals();
+        }
+        super.transmit();
+    }
+
+    // Updates the features this sensor measures before its reading is sent
+    protected void readVitals() {
+        vitals.sample(features);
+    }
+
+    // Sensor.transmit creates the tuple internally, so it is linked to the patient and tagged with the
+    // priority class of its stream when it is sent
+    @Override
+    protected void send(int entityId, double delay, int cloudSimTag, Object data) {
+        if (data instanceof Tuple) {
+            TuplePriority.set((Tuple) data, TuplePriority.ofStream(((Tuple) data).getTupleType()));
+            SimulationMetrics.getInstance().tupleEmitted((Tuple) data);
+            if (vitals != null) {
+                PatientTuples.register((Tuple) data, vitals);
+            }
+        }
+        super.send(entityId, delay, cloudSimTag, data);
+    }
+}
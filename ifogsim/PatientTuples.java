@@ -0,0 +1,62 @@
+package org.fog.test.perfeval;
+
+import java.util.*;
+
+import org.fog.entities.Tuple;
+
+public class PatientTuples {
+
+    // Tuple types whose origin is needed: by the Predictor cache and by the DataStorage time-series store
+    private static final Set<String> TRACKED_TYPES = new HashSet<>(Arrays.asList("PREDICTION_TASK", "PREDICTION_RESULT"));
+
+    // Patient readings by cloudlet id for sensor readings and prediction tasks still in flight
+    private static final Map<Integer, Reading> origins = new HashMap<>();
+
+    // Copies the patient's feature values as the sensor sends them, since PatientVitals keeps changing while the
+    // reading is in flight
+    static void register(Tuple tuple, PatientVitals vitals) {
+        origins.put(tuple.getCloudletId(), new Reading(vitals.patient, vitals.values.clone()));
+    }
+
+    static void register(Tuple tuple, Reading reading) {
+        origins.put(tuple.getCloudletId(), reading);
+    }
+
+    // Hands the patient of a finished tuple on to the prediction tasks created from it
+    static void transfer(Tuple input, List<Tuple> outputs) {
+        Reading reading = origins.remove(input.getCloudletId());
+        if (reading == null) {
+            return;
+        }
+        for (Tuple output : outputs) {
+            // Outputs the application registered itself, such as fused feature vectors, keep their reading
+            if (TRACKED_TYPES.contains(output.getTupleType())) {
+                origins.putIfAbsent(output.getCloudletId(), reading);
+            }
+        }
+    }
+
+    static Reading get(Tuple tuple) {
+        return origins.get(tuple.getCloudletId());
+    }
+
+    static Reading remove(Tuple tuple) {
+        return origins.remove(tuple.getCloudletId());
+    }
+
+    // Forgets tuples left in flight by a previous run in the same JVM
+    static void clear() {
+        origins.clear();
+    }
+
+    // A patient and its feature values in PatientVitals.FEATURES order when the reading was sent
+    static class Reading {
+        final int patient;
+        final double[] values;
+
+        Reading(int patient, double[] values) {
+            this.patient = patient;
+            this.values = values;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.fog.test.perfeval;
+
+import java.util.Random;
+
+public class PatientVitals {
+
+    // Model features in the order edge_node.py passes them to the XGBoost model
+    static final String[] FEATURES = {"PPG_Signal", "Heart_Rate", "Systolic_Peak", "Diastolic_Peak",
+            "Pulse_Area", "Age", "Weight", "Gender"};
+
+    // Typical values (the edge_node.py example payload), also the scale the cache tolerance is relative to
+    static final double[] NOMINAL = {0.95, 75, 120, 80, 23.5, 40, 70, 1};
+
+    // Pull back towards the patient's baseline on every reading
+    private static final double REVERSION = 0.1;
+
+    final int patient;
+    final double[] values = new double[FEATURES.length];
+    private final double[] baseline = new double[FEATURES.length];
+    private final Random random;
+    private final double volatility;
+
+    // Each patient gets its own baseline around the nominal values, seeded by the patient index so runs repeat
+    public PatientVitals(int patient, double volatility) {
+        this.patient = patient;
+        this.random = new Random(patient);
+        this.volatility = volatility;
+        for (int i = 0; i < FEATURES.length; i++) {
+            baseline[i] = NOMINAL[i] * (1 + 0.1 * random.nextGaussian());
+        }
+        baseline[5] = 20 + random.nextInt(60);
+        baseline[7] = random.nextInt(2);
+        System.arraycopy(baseline, 0, values, 0, values.length);
+    }
+
+    // Features measured by each sensor stream; Age never changes during a run
+    static int[] featuresOf(String tupleType) {
+        switch (tupleType) {
+            case "PPG_STREAM": return new int[]{0};
+            case "HEART_RATE_STREAM": return new int[]{1};
+            case "SYSTOLIC_PEAK_STREAM": return new int[]{2};
+            case "DIASTOLIC_PEAK_STREAM": return new int[]{3};
+            case "PULSE_AREA_STREAM": return new int[]{4};
+            case "WEIGHT_GENDER_STREAM": return new int[]{6, 7};
+            default: return new int[0];
+        }
+    }
+
+    // Synthetic reading: a mean-reverting random walk around the baseline, Gender stays fixed
+    void sample(int[] features) {
+        for (int i : features) {
+            if (i != 7) {
+                values[i] += REVERSION * (baseline[i] - values[i]) + volatility * NOMINAL[i] * random.nextGaussian();
+            }
+        }
+    }
+
+    // Recorded reading from a trace row; features missing from the trace keep their value
+    void set(int[] features, double[] recorded) {
+        for (int i : features) {
+            if (!Double.isNaN(recorded[i])) {
+                values[i] = recorded[i];
+            }
+        }
+    }
+}
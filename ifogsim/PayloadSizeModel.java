@@ -0,0 +1,119 @@
+package org.fog.test.perfeval;
+
+import java.util.*;
+
+public class PayloadSizeModel {
+
+    static final String JSON = "json";
+    static final String BINARY = "binary";
+
+    // Readings encoded per patient to measure the sizes
+    private static final int READINGS = 240;
+
+    // Mean encoded bytes of one reading of every sensor stream and of one full feature record
+    final Map<String, Double> streamBytes;
+    final double recordBytes;
+
+    private PayloadSizeModel(Map<String, Double> streamBytes, double recordBytes) {
+        this.streamBytes = streamBytes;
+        this.recordBytes = recordBytes;
+    }
+
+    // Encodes READINGS readings of every patient, synthetic vitals or rows of the trace, once per sensor stream
+    // with that stream's features and once with all of them, as JSON objects or as binary frames of batch
+    // consecutive readings of one patient; binary frames are decoded again and checked against the quantized values.
+    // JSON holds trace values as recorded and synthetic ones rounded, as the Python senders post them.
+    static PayloadSizeModel measure(String encoding, int batch, int patients, double interval, double volatility,
+                                    TraceFile trace) {
+        if (!encoding.equals(JSON) && !encoding.equals(BINARY)) {
+            throw new IllegalArgumentException("--encoding must be json or binary: " + encoding);
+        }
+        if (batch < 1 || batch > SensorRecordCodec.MAX_RECORDS) {
+            throw new IllegalArgumentException("--encodingBatch must be between 1 and " + SensorRecordCodec.MAX_RECORDS);
+        }
+
+        double[][][] readings = new double[patients][READINGS][];
+        long[][] times = new long[patients][READINGS];
+        int[] allFeatures = new int[PatientVitals.FEATURES.length];
+        for (int i = 0; i < allFeatures.length; i++) {
+            allFeatures[i] = i;
+        }
+        for (int p = 0; p < patients; p++) {
+            PatientVitals vitals = new PatientVitals(p, volatility);
+            TraceDistribution rows = trace == null ? null : new TraceDistribution(trace, p, patients, true);
+            double time = 0;
+            for (int r = 0; r < READINGS; r++) {
+                if (rows == null) {
+                    vitals.sample(allFeatures);
+                    time += interval;
+                } else {
+                    time += rows.getNextValue();
+                    vitals.set(allFeatures, rows.getCurrentFeatures());
+                }
+                readings[p][r] = vitals.values.clone();
+                times[p][r] = Math.round(time);
+            }
+        }
+
+        Map<String, Double> streamBytes = new LinkedHashMap<>();
+        for (String[] stream : SmartHealthTopology.SENSOR_STREAMS) {
+            int mask = SensorRecordCodec.mask(PatientVitals.featuresOf(stream[1]));
+            streamBytes.put(stream[1], meanBytes(encoding, batch, readings, times, mask, trace != null));
+        }
+        double recordBytes = meanBytes(encoding, batch, readings, times, SensorRecordCodec.mask(allFeatures),
+                trace != null);
+        return new PayloadSizeModel(streamBytes, recordBytes);
+    }
+
+    private static double meanBytes(String encoding, int batch, double[][][] readings, long[][] times, int mask,
+                                    boolean recorded) {
+        long bytes = 0;
+        long count = 0;
+        if (encoding.equals(JSON)) {
+            byte[] out = new byte[1024];
+            for (int p = 0; p < readings.length; p++) {
+                for (int r = 0; r < readings[p].length; r++) {
+                    bytes += SensorRecordCodec.writeJson(out, 0, times[p][r], readings[p][r], mask, recorded);
+                    count++;
+                }
+            }
+            return (double) bytes / count;
+        }
+
+        SensorRecordCodec codec = new SensorRecordCodec();
+        int[] decodedPatients = new int[batch];
+        long[] decodedTimes = new long[batch];
+        float[] decodedFeatures = new float[batch * PatientVitals.FEATURES.length];
+        for (int p = 0; p < readings.length; p++) {
+            for (int start = 0; start < readings[p].length; start += batch) {
+                int end = Math.min(start + batch, readings[p].length);
+                codec.reset();
+                for (int r = start; r < end; r++) {
+                    codec.add(p, times[p][r], readings[p][r], mask);
+                }
+                int length = codec.finish();
+                bytes += length;
+                count += end - start;
+
+                if (codec.decode(codec.buffer(), length, decodedPatients, decodedTimes, decodedFeatures) != end - start) {
+                    throw new IllegalStateException("Binary frame lost records");
+                }
+                for (int r = start; r < end; r++) {
+                    check(readings[p][r], decodedFeatures, (r - start) * PatientVitals.FEATURES.length, mask);
+                }
+            }
+        }
+        return (double) bytes / count;
+    }
+
+    // Decoded values must be the encoded ones up to the quantization (and float rounding)
+    private static void check(double[] values, float[] decoded, int offset, int mask) {
+        for (int i = 0; i < values.length; i++) {
+            if ((mask & (1 << i)) != 0 && !(Math.abs(decoded[offset + i] - values[i])
+                    <= 0.5 * Math.pow(10, -SensorRecordCodec.DECIMALS[i]) + 1e-4 * Math.abs(values[i]))) {
+                throw new IllegalStateException("Binary frame decoded " + PatientVitals.FEATURES[i] + " as "
+                        + decoded[offset + i] + " instead of " + values[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package org.fog.test.perfeval;
+
+import org.cloudbus.cloudsim.core.SimEntity;
+import org.cloudbus.cloudsim.core.SimEvent;
+
+public class PlacementMonitor extends SimEntity {
+
+    // Event tag outside the range used by FogEvents
+    private static final int REEVALUATE = 9001;
+
+    private final AdaptiveModulePlacement placement;
+    private final double interval;
+
+    // Re-evaluates the adaptive placement every interval of simulated time
+    public PlacementMonitor(String name, AdaptiveModulePlacement placement, double interval) {
+        super(name);
+        this.placement = placement;
+        this.interval = interval;
+    }
+
+    @Override
+    public void startEntity() {
+        send(getId(), interval, REEVALUATE);
+    }
+
+    @Override
+    public void processEvent(SimEvent ev) {
+        if (ev.getTag() == REEVALUATE) {
+            placement.reevaluate(interval);
+            send(getId(), interval, REEVALUATE);
+        }
+    }
+
+    @Override
+    public void shutdownEntity() {
+    }
+}
@@ -0,0 +1,131 @@
+package org.fog.test.perfeval;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+public class PredictionBatcher {
+
+    private final TreeEnsemble model;
+    private final int maxBatch;
+    private final long maxWaitNanos;
+
+    // Requests waiting for a worker; ArrayBlockingQueue moves them without allocating a node per request
+    private final ArrayBlockingQueue<Request> queue;
+
+    final LongAdder predictions = new LongAdder();
+    final LongAdder batches = new LongAdder();
+
+    // Worker threads each take whatever requests are queued, up to maxBatch, waiting at most maxWait for more,
+    // so batches grow with the load across all patients and stay at one request when the gateway is idle
+    PredictionBatcher(TreeEnsemble model, int workers, int maxBatch, long maxWaitMicros, int queueCapacity) {
+        this.model = model;
+        this.maxBatch = maxBatch;
+        this.maxWaitNanos = TimeUnit.MICROSECONDS.toNanos(maxWaitMicros);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        for (int i = 0; i < workers; i++) {
+            Thread worker = new Thread(this::work, "predictor-" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    // Blocks the calling (virtual) thread until the request's features were predicted
+    void predict(Request request) throws InterruptedException {
+        request.done = false;
+        request.waiter = Thread.currentThread();
+        queue.put(request);
+        while (!request.done) {
+            LockSupport.park(this);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    // Predicts a batch that arrived as one binary frame on the calling thread; it already is a batch, so it does
+    // not wait for a worker
+    void predictFrame(Request request, int rows) {
+        model.predict(request.frameFeatures, rows, request.framePredictions);
+        predictions.add(rows);
+        batches.increment();
+    }
+
+    private void work() {
+        List<Request> batch = new ArrayList<>(maxBatch);
+        float[] values = new float[maxBatch * model.features];
+        float[] out = new float[maxBatch];
+        try {
+            while (true) {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < maxBatch) {
+                    if (queue.drainTo(batch, maxBatch - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    Request next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                int rows = batch.size();
+                for (int r = 0; r < rows; r++) {
+                    System.arraycopy(batch.get(r).features, 0, values, r * model.features, model.features);
+                }
+                model.predict(values, rows, out);
+                for (int r = 0; r < rows; r++) {
+                    Request request = batch.get(r);
+                    request.prediction = out[r];
+                    request.batchSize = rows;
+                    request.done = true;
+                    LockSupport.unpark(request.waiter);
+                }
+                predictions.add(rows);
+                batches.increment();
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Per-request state, pooled by the gateway so steady-state requests allocate none of it
+    static class Request {
+        final float[] features;
+        final FeatureParser parser = new FeatureParser();
+        byte[] buffer = new byte[1024];
+        byte[] response = new byte[256];
+        float prediction;
+        int batchSize;
+        volatile boolean done;
+        Thread waiter;
+
+        // Decoded records of a binary frame, grown to the largest frame the request has seen
+        final SensorRecordCodec codec = new SensorRecordCodec();
+        int[] framePatients = new int[0];
+        long[] frameTimes = new long[0];
+        float[] frameFeatures = new float[0];
+        float[] framePredictions = new float[0];
+
+        Request(int features) {
+            this.features = new float[features];
+        }
+
+        // Makes room for a frame of up to records records and its JSON response
+        void ensureFrameCapacity(int records) {
+            if (framePatients.length < records) {
+                framePatients = new int[records];
+                frameTimes = new long[records];
+                frameFeatures = new float[records * features.length];
+                framePredictions = new float[records];
+            }
+            if (response.length < 128 + 40 * records) {
+                response = new byte[128 + 40 * records];
+            }
+        }
+    }
+}
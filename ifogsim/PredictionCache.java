@@ -0,0 +1,65 @@
+package org.fog.test.perfeval;
+
+import java.util.*;
+
+import org.cloudbus.cloudsim.core.CloudSim;
+
+public class PredictionCache {
+
+    private final int maxEntries;
+    private final double ttl;
+    private final double tolerance;
+
+    // Quantized feature vector -> time the prediction was cached, in least-recently-used order: a hit re-inserts its
+    // entry at the end. An access-ordered LinkedHashMap subclass would do the same but cannot be checkpointed.
+    private final LinkedHashMap<Long, Double> entries = new LinkedHashMap<>();
+
+    long hits = 0;
+    long misses = 0;
+
+    // Caches Predictor results by feature vector: features are rounded to steps of `tolerance` times their nominal
+    // value, so vitals that barely changed map to the same entry. Entries expire after `ttl` of simulated time and
+    // the least recently used one is evicted beyond `maxEntries`.
+    public PredictionCache(int maxEntries, double ttl, double tolerance) {
+        // A zero step would round every feature to the same key, so every lookup after the first would hit
+        if (!(tolerance > 0)) {
+            throw new IllegalArgumentException("--cacheTolerance must be greater than 0: " + tolerance);
+        }
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+        this.tolerance = tolerance;
+    }
+
+    // Returns true on a hit; a miss stores the vector, as its prediction is computed right away
+    boolean lookup(double[] values) {
+        long key = key(values);
+        double now = CloudSim.clock();
+        Double cachedAt = entries.remove(key);
+        if (cachedAt != null && now - cachedAt <= ttl) {
+            entries.put(key, cachedAt);
+            hits++;
+            return true;
+        }
+        entries.put(key, now);
+        if (entries.size() > maxEntries) {
+            Iterator<Long> eldest = entries.keySet().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+        misses++;
+        return false;
+    }
+
+    // 64-bit FNV-1a hash of the quantized features; a collision needs two vectors to match in 64 bits
+    private long key(double[] values) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < values.length; i++) {
+            long quantized = Math.round(values[i] / (tolerance * PatientVitals.NOMINAL[i]));
+            for (int b = 0; b < 64; b += 8) {
+                hash ^= (quantized >>> b) & 0xff;
+                hash *= 0x100000001b3L;
+            }
+        }
+        return hash;
+    }
+}
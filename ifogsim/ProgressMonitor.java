@@ -0,0 +1,139 @@
+package org.fog.test.perfeval;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.*;
+
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.SimEntity;
+import org.cloudbus.cloudsim.core.SimEvent;
+import org.fog.entities.FogDevice;
+
+public class ProgressMonitor extends SimEntity implements Snapshot.Restorable {
+
+    // Event tag outside the range used by FogEvents
+    private static final int SAMPLE = 9007;
+
+    // Devices with the deepest queues listed in every sample, so samples stay small on large topologies
+    private static final int TOP_QUEUES = 20;
+
+    private final List<FogDevice> devices;
+    private final SimulationConfig config;
+
+    // Threads, sockets and files are not checkpointed, so a restored monitor starts publishing again. It continues
+    // the progress file of the run it resumes from the first sample and length the file had at the checkpoint.
+    private transient ProgressPublisher publisher;
+    private String progressHead;
+    private long progressLength = 0;
+
+    // Device events, simulated time and wall-clock time of the previous sample
+    private long lastEvents = 0;
+    private double lastClock = 0;
+    private transient long lastNanos;
+
+    // Samples the running simulation every progressInterval of simulated time and publishes it to the progress
+    // file and HTTP endpoint of the config
+    public ProgressMonitor(String name, List<FogDevice> devices, SimulationConfig config) throws IOException {
+        super(name);
+        this.devices = devices;
+        this.config = config;
+        startPublishing();
+        SimulationMetrics.getInstance().countInFlight();
+    }
+
+    @Override
+    public void restore() throws IOException {
+        startPublishing();
+    }
+
+    private void startPublishing() throws IOException {
+        publisher = new ProgressPublisher(config.progressFile == null ? null : Paths.get(config.progressFile),
+                config.progressPort, progressHead, progressLength);
+        lastNanos = System.nanoTime();
+    }
+
+    @Override
+    public void startEntity() {
+        SimulationMetrics.getInstance().takeProgressLoopLatency();
+        send(getId(), config.progressInterval, SAMPLE);
+    }
+
+    @Override
+    public void processEvent(SimEvent ev) {
+        if (ev.getTag() == SAMPLE) {
+            publisher.publish(sample(false));
+            progressHead = publisher.head();
+            progressLength = publisher.length();
+            send(getId(), config.progressInterval, SAMPLE);
+        }
+    }
+
+    // Publishes a last sample once the run stops and closes the file and endpoint
+    void finish() {
+        publisher.publish(sample(true));
+        publisher.close();
+    }
+
+    // One JSON object: simulated time and progress, device events and simulated ms per wall-clock second since the
+    // previous sample, the loop delay of the loops completed since then, tuples queued on the devices (the deepest
+    // ones by name) and the tuples in flight on every AppEdge
+    private String sample(boolean done) {
+        SimulationMetrics metrics = SimulationMetrics.getInstance();
+        double now = CloudSim.clock();
+        long nanos = System.nanoTime();
+        double wallSeconds = (nanos - lastNanos) / 1e9;
+        LatencyHistogram loops = metrics.takeProgressLoopLatency();
+
+        StringBuilder json = new StringBuilder(1024);
+        json.append("{\"time\": ").append(now)
+                .append(", \"progress\": ").append(Math.min(1, now / config.duration))
+                .append(", \"done\": ").append(done)
+                .append(", \"events\": ").append(metrics.deviceEvents)
+                .append(", \"eventsPerSecond\": ").append(number((metrics.deviceEvents - lastEvents) / wallSeconds))
+                .append(", \"simulatedMsPerSecond\": ").append(number((now - lastClock) / wallSeconds))
+                .append(", \"loops\": ").append(loops.getTotalCount())
+                .append(", \"loopMean\": ").append(loops.getTotalCount() == 0 ? "null" : number(loops.getMean()))
+                .append(", \"loopP50\": ").append(loops.getTotalCount() == 0 ? "null" : number(loops.getValueAtPercentile(50)))
+                .append(", \"loopP99\": ").append(loops.getTotalCount() == 0 ? "null" : number(loops.getValueAtPercentile(99)))
+                .append(", \"loopMax\": ").append(loops.getTotalCount() == 0 ? "null" : number(loops.getMax()));
+        lastEvents = metrics.deviceEvents;
+        lastClock = now;
+        lastNanos = nanos;
+
+        long queued = 0;
+        PriorityQueue<Object[]> deepest = new PriorityQueue<>(Comparator.comparingInt((Object[] entry) -> (Integer) entry[1]));
+        for (FogDevice device : devices) {
+            int depth = ((SmartHealthFogDevice) device).queueDepth();
+            queued += depth;
+            if (depth > 0) {
+                deepest.add(new Object[]{device.getName(), depth});
+                if (deepest.size() > TOP_QUEUES) {
+                    deepest.poll();
+                }
+            }
+        }
+        List<Object[]> queues = new ArrayList<>(deepest);
+        queues.sort(Comparator.comparingInt((Object[] entry) -> (Integer) entry[1]).reversed());
+        json.append(", \"queuedTuples\": ").append(queued).append(", \"queues\": {");
+        for (int i = 0; i < queues.size(); i++) {
+            json.append(i == 0 ? "\"" : ", \"").append(queues.get(i)[0]).append("\": ").append(queues.get(i)[1]);
+        }
+
+        json.append("}, \"inFlight\": {");
+        boolean[] first = {true};
+        metrics.forEachInFlight((type, count) -> {
+            json.append(first[0] ? "\"" : ", \"").append(type).append("\": ").append(count);
+            first[0] = false;
+        });
+        return json.append("}}").toString();
+    }
+
+    // JSON has no NaN or infinity
+    private static String number(double value) {
+        return Double.isNaN(value) || Double.isInfinite(value) ? "null" : String.valueOf(value);
+    }
+
+    @Override
+    public void shutdownEntity() {
+    }
+}
@@ -0,0 +1,181 @@
+package org.fog.test.perfeval;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class ProgressPublisher {
+
+    // The progress log rolls over to <file>.1 once it reaches this size
+    private static final long MAX_FILE_BYTES = 16L << 20;
+
+    // Wall-clock time between two writes of the progress log
+    private static final long WRITE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    // Latest sample, swapped in by the simulation thread and read by the HTTP handler without locking
+    private final AtomicReference<String> latest = new AtomicReference<>("{}");
+
+    // Samples the writer thread has not written yet
+    private final ConcurrentLinkedQueue<String> pending = new ConcurrentLinkedQueue<>();
+
+    private final Path file;
+    private final Thread writer;
+
+    // First sample and length of the progress file once the writer has written every published sample, kept by the
+    // simulation thread; rollovers happen at the same samples on both threads, so it needs nothing from the writer
+    private String head;
+    private long length;
+    private final HttpServer server;
+    private volatile boolean closed = false;
+
+    // Appends every sample as a JSON line to file and serves the latest one at http://localhost:port/progress;
+    // either may be left out (null, 0). A new run (head null) starts an empty file. A run resumed from a checkpoint
+    // passes the first sample and length the file had then: the file is cut to that length, so the samples the
+    // interrupted run wrote after the checkpoint are dropped. File and socket are handled on their own threads, so
+    // publishing only costs the simulation thread two non-blocking writes.
+    ProgressPublisher(Path file, int port, String head, long length) throws IOException {
+        this.file = file;
+        if (file != null) {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            // If the interrupted run rolled the file over after the checkpoint, the file of the checkpoint is <file>.1
+            Path rolled = rolledOver();
+            if (head != null && !startsWith(file, head) && startsWith(rolled, head)) {
+                Files.move(rolled, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            if (head != null && startsWith(file, head)) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.truncate(length);
+                }
+                this.head = head;
+                this.length = length;
+            } else {
+                Files.deleteIfExists(file);
+            }
+            writer = new Thread(this::write, "progress-writer");
+            writer.setDaemon(true);
+            writer.start();
+        } else {
+            writer = null;
+        }
+        if (port > 0) {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 16);
+            server.createContext("/progress", this::serve);
+            server.start();
+        } else {
+            server = null;
+        }
+    }
+
+    void publish(String sample) {
+        latest.set(sample);
+        if (writer != null && writer.isAlive()) {
+            pending.add(sample);
+            if (length == 0) {
+                head = sample;
+            }
+            length += sample.length() + 1;
+            if (length >= MAX_FILE_BYTES) {
+                length = 0;
+            }
+        }
+    }
+
+    String head() {
+        return head;
+    }
+
+    long length() {
+        return length;
+    }
+
+    // Writes the samples still pending and stops the writer and the server
+    void close() {
+        closed = true;
+        if (writer != null) {
+            LockSupport.unpark(writer);
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        byte[] body = latest.get().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+
+    private void write() {
+        try {
+            Writer out = open();
+            long written = Files.size(file);
+            boolean last;
+            do {
+                last = closed;
+                String sample;
+                while ((sample = pending.poll()) != null) {
+                    out.write(sample);
+                    out.write('\n');
+                    written += sample.length() + 1;
+                    if (written >= MAX_FILE_BYTES) {
+                        out.close();
+                        Files.move(file, rolledOver(), StandardCopyOption.REPLACE_EXISTING);
+                        out = open();
+                        written = 0;
+                    }
+                }
+                out.flush();
+                if (!last) {
+                    LockSupport.parkNanos(this, WRITE_INTERVAL_NANOS);
+                }
+            } while (!last);
+            out.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static boolean startsWith(Path path, String head) throws IOException {
+        if (!Files.exists(path)) {
+            return false;
+        }
+        byte[] expected = (head + "\n").getBytes(StandardCharsets.UTF_8);
+        byte[] actual = new byte[expected.length];
+        try (InputStream in = Files.newInputStream(path)) {
+            int read = 0;
+            int n;
+            while (read < actual.length && (n = in.read(actual, read, actual.length - read)) > 0) {
+                read += n;
+            }
+            return read == actual.length && Arrays.equals(actual, expected);
+        }
+    }
+
+    private Path rolledOver() {
+        return file.resolveSibling(file.getFileName() + ".1");
+    }
+
+    private Writer open() throws IOException {
+        return Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
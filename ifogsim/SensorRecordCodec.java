@@ -0,0 +1,276 @@
+package org.fog.test.perfeval;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class SensorRecordCodec {
+
+    static final int VERSION = 1;
+
+    // Version byte and the record count as an unsigned 16-bit integer
+    static final int HEADER_BYTES = 3;
+    static final int MAX_RECORDS = 0xFFFF;
+
+    // Fixed-point resolution of every feature in PatientVitals.FEATURES order: PPG to 0.001, Pulse_Area to 0.01,
+    // the other vitals to 0.1 and Age and Gender to whole numbers
+    static final int[] DECIMALS = {3, 1, 1, 1, 2, 0, 1, 0};
+    private static final double[] SCALE = new double[DECIMALS.length];
+
+    // Keys as json.dumps writes them, so JSON sizes match what simulate_iot.py and azure-iot-sim.py post
+    private static final byte[][] JSON_KEYS = new byte[PatientVitals.FEATURES.length][];
+    private static final byte[] TIMESTAMP_KEY = "\"timestamp_sent\": ".getBytes(StandardCharsets.US_ASCII);
+
+    // Unix time in ms the sender's clock reads at time 0 of the run; every current timestamp has ten integer digits
+    private static final long START_MILLIS = 1_700_000_000_000L;
+
+    static {
+        for (int i = 0; i < SCALE.length; i++) {
+            SCALE[i] = Math.pow(10, DECIMALS[i]);
+            JSON_KEYS[i] = ("\"" + PatientVitals.FEATURES[i] + "\": ").getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    // Frame being written; an encoder belongs to one sender at a time and reuses its buffer for every frame
+    private byte[] buffer = new byte[256];
+    private int position;
+    private int records;
+
+    // The previous record of the frame, which the next one is delta-encoded against
+    private int previousPatient;
+    private long previousTime;
+    private final long[] previous = new long[PatientVitals.FEATURES.length];
+
+    // Running feature values and the last varint read while decoding
+    private final long[] decoded = new long[PatientVitals.FEATURES.length];
+    private long varint;
+
+    // Starts a new frame; the encoder's buffer is overwritten
+    void reset() {
+        position = HEADER_BYTES;
+        records = 0;
+        previousPatient = 0;
+        previousTime = 0;
+        Arrays.fill(previous, 0);
+    }
+
+    // Appends one record: the patient, its time in ms since the sender started and the features whose bit is set in
+    // mask, quantized to DECIMALS. Every field is a zigzag varint of the difference to the previous record of the
+    // frame, so a patient's consecutive readings mostly take one byte per feature.
+    void add(int patient, long time, double[] values, int mask) {
+        if (records == MAX_RECORDS) {
+            throw new IllegalStateException("A frame holds at most " + MAX_RECORDS + " records");
+        }
+        if (buffer.length - position < 2 * 10 + 1 + 10 * values.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        position = writeVarint(buffer, position, zigzag(patient - previousPatient));
+        position = writeVarint(buffer, position, zigzag(time - previousTime));
+        buffer[position++] = (byte) mask;
+        previousPatient = patient;
+        previousTime = time;
+        for (int i = 0; i < previous.length; i++) {
+            if ((mask & (1 << i)) != 0) {
+                long quantized = Math.round(values[i] * SCALE[i]);
+                position = writeVarint(buffer, position, zigzag(quantized - previous[i]));
+                previous[i] = quantized;
+            }
+        }
+        records++;
+    }
+
+    // Writes the header and returns the length of the frame, which starts at buffer()[0]
+    int finish() {
+        buffer[0] = VERSION;
+        buffer[1] = (byte) (records >>> 8);
+        buffer[2] = (byte) records;
+        return position;
+    }
+
+    byte[] buffer() {
+        return buffer;
+    }
+
+    // Number of records in a frame, from its header
+    static int records(byte[] frame, int length) {
+        if (length < HEADER_BYTES || frame[0] != VERSION) {
+            throw new IllegalArgumentException("Not a version " + VERSION + " sensor frame");
+        }
+        return (frame[1] & 0xFF) << 8 | frame[2] & 0xFF;
+    }
+
+    // Decodes a frame into patients, times and features (one row of PatientVitals.FEATURES per record, NaN for
+    // features the record does not carry) and returns the number of records; throws IllegalArgumentException for a
+    // malformed frame or one with more records than the arrays hold. Nothing is allocated, and the encoder's frame
+    // is left as it is.
+    int decode(byte[] frame, int length, int[] patients, long[] times, float[] features) {
+        int count = records(frame, length);
+        int width = previous.length;
+        if (count > patients.length || count > times.length || count * width > features.length) {
+            throw new IllegalArgumentException("Frame holds " + count + " records, more than fit");
+        }
+
+        int read = HEADER_BYTES;
+        int patient = 0;
+        long time = 0;
+        Arrays.fill(decoded, 0);
+        for (int r = 0; r < count; r++) {
+            read = readVarint(frame, length, read);
+            patient += (int) unzigzag(varint);
+            read = readVarint(frame, length, read);
+            time += unzigzag(varint);
+            patients[r] = patient;
+            times[r] = time;
+            if (read >= length) {
+                throw new IllegalArgumentException("Frame ends inside record " + r);
+            }
+            int mask = frame[read++] & 0xFF;
+            for (int i = 0; i < width; i++) {
+                if ((mask & (1 << i)) == 0) {
+                    features[r * width + i] = Float.NaN;
+                    continue;
+                }
+                read = readVarint(frame, length, read);
+                decoded[i] += unzigzag(varint);
+                features[r * width + i] = (float) (decoded[i] / SCALE[i]);
+            }
+        }
+        return count;
+    }
+
+    // Writes the JSON object json.dumps produces for the payload of azure-iot-sim.py: timestamp_sent for the reading
+    // at time (ms since the sender started), then the features in mask. Synthetic values are rounded to DECIMALS as
+    // that script rounds them; recorded ones are written unrounded, as simulate_iot.py posts float(row[k]). Returns
+    // the position after the object.
+    static int writeJson(byte[] out, int position, long time, double[] values, int mask, boolean recorded) {
+        out[position++] = '{';
+        System.arraycopy(TIMESTAMP_KEY, 0, out, position, TIMESTAMP_KEY.length);
+        position = writeTimestamp(out, position + TIMESTAMP_KEY.length, time);
+        for (int i = 0; i < values.length; i++) {
+            if ((mask & (1 << i)) == 0) {
+                continue;
+            }
+            out[position++] = ',';
+            out[position++] = ' ';
+            System.arraycopy(JSON_KEYS[i], 0, out, position, JSON_KEYS[i].length);
+            position += JSON_KEYS[i].length;
+            position = recorded ? writePythonRepr(out, position, values[i])
+                    : writePythonFloat(out, position, Math.round(values[i] * SCALE[i]), DECIMALS[i]);
+        }
+        out[position++] = '}';
+        return position;
+    }
+
+    // time.time() resolves well below a millisecond, so json.dumps writes it with about seven decimals; the reading
+    // time only has milliseconds, so the digits below are written as zeros to keep that length
+    private static int writeTimestamp(byte[] out, int position, long time) {
+        long scaled = (START_MILLIS + time) * 10_000;
+        int end = position + 18;
+        for (int i = end - 1; i >= position; i--) {
+            if (i == end - 8) {
+                out[i] = '.';
+            } else {
+                out[i] = (byte) ('0' + scaled % 10);
+                scaled /= 10;
+            }
+        }
+        return end;
+    }
+
+    // Python's repr of a float: the shortest decimal that reads back as the same double, with at least one
+    // fractional digit. It allocates, which is fine while measuring sizes.
+    private static int writePythonRepr(byte[] out, int position, double value) {
+        BigDecimal exact = new BigDecimal(value);
+        BigDecimal shortest = exact;
+        for (int precision = 1; precision <= 17; precision++) {
+            shortest = exact.round(new MathContext(precision));
+            if (shortest.doubleValue() == value) {
+                break;
+            }
+        }
+        String repr = shortest.stripTrailingZeros().toPlainString();
+        if (repr.indexOf('.') < 0) {
+            repr += ".0";
+        }
+        for (int i = 0; i < repr.length(); i++) {
+            out[position++] = (byte) repr.charAt(i);
+        }
+        return position;
+    }
+
+    // Python's repr of a float with at most decimals digits after the point: trailing zeros are dropped, but at
+    // least one fractional digit is kept (75.0, 0.95)
+    private static int writePythonFloat(byte[] out, int position, long scaled, int decimals) {
+        if (scaled < 0) {
+            out[position++] = '-';
+            scaled = -scaled;
+        }
+        while (decimals > 0 && scaled % 10 == 0) {
+            scaled /= 10;
+            decimals--;
+        }
+        if (decimals == 0) {
+            scaled *= 10;
+            decimals = 1;
+        }
+        int digits = 1;
+        for (long i = scaled; i >= 10; i /= 10) {
+            digits++;
+        }
+        digits = Math.max(digits, decimals + 1);
+        int end = position + digits + 1;
+        for (int i = end - 1; i >= position; i--) {
+            if (i == end - 1 - decimals) {
+                out[i] = '.';
+            } else {
+                out[i] = (byte) ('0' + scaled % 10);
+                scaled /= 10;
+            }
+        }
+        return end;
+    }
+
+    // Mask with the bit of every given feature index set
+    static int mask(int[] features) {
+        int mask = 0;
+        for (int i : features) {
+            mask |= 1 << i;
+        }
+        return mask;
+    }
+
+    private static long zigzag(long value) {
+        return value << 1 ^ value >> 63;
+    }
+
+    private static long unzigzag(long value) {
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    private static int writeVarint(byte[] out, int position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out[position++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        out[position++] = (byte) value;
+        return position;
+    }
+
+    // Reads the varint at the position into varint and returns the position after it
+    private int readVarint(byte[] in, int length, int position) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position >= length) {
+                throw new IllegalArgumentException("Frame ends inside a varint");
+            }
+            byte b = in[position++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                varint = value;
+                return position;
+            }
+        }
+        throw new IllegalArgumentException("Varint longer than 64 bits");
+    }
+}
@@ -0,0 +1,318 @@
+package org.fog.test.perfeval;
+
+import java.util.*;
+
+public class SimulationConfig {
+
+    // Where the Predictor module runs: "adaptive" (chosen and migrated at runtime), "edge" or "cloud"
+    String placement = "edge";
+
+    // Adaptive placement: simulated time between re-evaluations and the CPU utilization counted as saturated
+    double reevaluationInterval = 100;
+    double saturation = 0.9;
+
+    // Link latencies (ms) from the edge to the cloud and from the mobile to the edge
+    double edgeUplinkLatency = 100;
+    double mobileUplinkLatency = 50;
+
+    // Processing capacity of the mobile device
+    long mobileMips = 1200;
+
+    // Topology size: edges below the cloud, mobile gateways per edge and patients per gateway
+    int edges = 1;
+    int gatewaysPerEdge = 1;
+    int patientsPerGateway = 1;
+
+    // Time between two readings of every sensor
+    double sensorInterval = 1;
+
+    // Optional recorded CSV trace replayed by the sensors, its timestamp column and the factor to simulation time
+    String traceFile = null;
+    String traceTimeColumn = null;
+    double traceTimeScale = 1;
+
+    // Wire format of sensor readings and feature records: "json" (the objects simulate_iot.py posts) or "binary"
+    // (SensorRecordCodec frames of encodingBatch readings); sensor tuple and PREDICTION_TASK sizes are measured in it
+    String encoding = "json";
+    int encodingBatch = 1;
+
+    // Sensor fusion in SensorReader: "none" (one PREDICTION_TASK per reading), "count" or "window"
+    String fusion = "none";
+    int fusionBatchSize = 6;
+    double fusionWindow = 1;
+
+    // Predictor result cache on the edges: capacity, time to live, quantization tolerance (fraction of the nominal
+    // feature value), CPU cost of a hit and the volatility of the synthetic vitals it is keyed on
+    boolean predictorCache = false;
+    int cacheSize = 10000;
+    double cacheTtl = 60;
+    double cacheTolerance = 0.02;
+    double cacheHitCpu = 50;
+    double vitalsVolatility = 0.01;
+
+    // Edge admission control for the Predictor: "none", "priority" (critical tuples start first), "shed" or
+    // "offload" (routine tuples are dropped or sent to the cloud once the queue depth or utilization threshold is
+    // crossed; offload needs adaptive placement), tuples running at once, the thresholds, the utilization averaging
+    // window and the routine streams
+    String admission = "none";
+    int admissionConcurrency = 1;
+    int admissionQueueDepth = 50;
+    double admissionUtilization = 0.9;
+    double admissionWindow = 10;
+    String routineStreams = "WEIGHT_GENDER_STREAM";
+
+    // Sensor load over a simulated day of diurnalPeriod (0 keeps it constant): the sensor rate starts the day at
+    // 1 - diurnalAmplitude times its mean and peaks at 1 + diurnalAmplitude halfway through
+    double diurnalPeriod = 0;
+    double diurnalAmplitude = 0.8;
+
+    // Edge autoscaling: every autoscaleInterval the edges' CPU utilization and the loop p99 of that interval power
+    // up an edge (above scaleUpUtilization or latencySlo, 0 for no SLO) or power one down (below
+    // scaleDownUtilization), keeping at least minEdges. A powered-up edge takes over gateways after edgeBootTime,
+    // a powered-down one draws edgeSleepPower (W), and every powered edge costs edgeHourlyCost per simulated hour.
+    boolean autoscale = false;
+    double autoscaleInterval = 1000;
+    int minEdges = 1;
+    double scaleUpUtilization = 0.7;
+    double scaleDownUtilization = 0.3;
+    double latencySlo = 0;
+    double edgeBootTime = 500;
+    double edgeSleepPower = 5;
+    double edgeHourlyCost = 0.05;
+
+    // Optional directory of the per-patient time-series store written by DataStorage (new or empty). Its append
+    // and display-query costs replace DataStorage's CPU and the DISPLAY_RESULT size, as points per block, points
+    // per display query and the MIPS of the machine the costs are measured on. They are loaded from the optional
+    // storage profile, or measured at startup without one.
+    String storageDir = null;
+    int storageBlockPoints = 120;
+    int displayPoints = 60;
+    double storageReferenceMips = 44800;
+    String storageProfile = null;
+
+    // Predictor inference cost: optional model descriptor (defaults to the model trained by train.py) and optional
+    // calibration profiles measured on edge and cloud hardware; without a profile the analytic cost model is used
+    String modelFile = null;
+    String edgeProfile = null;
+    String cloudProfile = null;
+
+    // Optional directory for latency percentiles, per-tuple-type timings and CPU utilization over time
+    String metricsDir = null;
+    double utilizationInterval = 100;
+
+    // Simulated time (ms) until the controller stops the run, iFogSim's MAX_SIMULATION_TIME
+    int duration = 10000;
+
+    // Checkpoints of the whole simulation every checkpointInterval of simulated time (0 turns them off), the
+    // directory they are written to and how many of the newest are kept; resumeFrom continues a run, or starts a
+    // branch of it, from one of them
+    double checkpointInterval = 0;
+    String checkpointDir = "checkpoints";
+    int checkpointKeep = 3;
+    String resumeFrom = null;
+
+    // Runs the edge subtrees in this many partitions in parallel, next to one for the cloud tier (0 runs a single
+    // CloudSim instance)
+    int partitions = 0;
+
+    // Samples of the running simulation every progressInterval of simulated time (0 turns them off): appended as
+    // JSON lines to progressFile and served at http://localhost:progressPort/progress (0 for no endpoint)
+    double progressInterval = 0;
+    String progressFile = null;
+    int progressPort = 0;
+
+    // Prints the iFogSim event log while the simulation runs
+    boolean verbose = true;
+
+    // Optional file that receives the final metrics as key=value lines
+    String resultFile = null;
+
+    // Reads options given as --name=value, unknown names are rejected
+    static SimulationConfig fromArgs(String[] args) {
+        SimulationConfig config = new SimulationConfig();
+        parseArgs(args).forEach(config::set);
+        return config;
+    }
+
+    // Options in the order they are given
+    static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value but got: " + arg);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        return options;
+    }
+
+    void set(String name, String value) {
+        switch (name) {
+            case "placement": placement = value; break;
+            case "reevaluationInterval": reevaluationInterval = Double.parseDouble(value); break;
+            case "saturation": saturation = Double.parseDouble(value); break;
+            case "edgeUplinkLatency": edgeUplinkLatency = Double.parseDouble(value); break;
+            case "mobileUplinkLatency": mobileUplinkLatency = Double.parseDouble(value); break;
+            case "mobileMips": mobileMips = Long.parseLong(value); break;
+            case "edges": edges = Integer.parseInt(value); break;
+            case "gatewaysPerEdge": gatewaysPerEdge = Integer.parseInt(value); break;
+            case "patientsPerGateway": patientsPerGateway = Integer.parseInt(value); break;
+            case "sensorInterval": sensorInterval = Double.parseDouble(value); break;
+            case "traceFile": traceFile = value; break;
+            case "traceTimeColumn": traceTimeColumn = value; break;
+            case "traceTimeScale": traceTimeScale = Double.parseDouble(value); break;
+            case "encoding": encoding = value; break;
+            case "encodingBatch": encodingBatch = Integer.parseInt(value); break;
+            case "fusion": fusion = value; break;
+            case "fusionBatchSize": fusionBatchSize = Integer.parseInt(value); break;
+            case "fusionWindow": fusionWindow = Double.parseDouble(value); break;
+            case "predictorCache": predictorCache = Boolean.parseBoolean(value); break;
+            case "cacheSize": cacheSize = Integer.parseInt(value); break;
+            case "cacheTtl": cacheTtl = Double.parseDouble(value); break;
+            case "cacheTolerance": cacheTolerance = Double.parseDouble(value); break;
+            case "cacheHitCpu": cacheHitCpu = Double.parseDouble(value); break;
+            case "vitalsVolatility": vitalsVolatility = Double.parseDouble(value); break;
+            case "admission": admission = value; break;
+            case "admissionConcurrency": admissionConcurrency = Integer.parseInt(value); break;
+            case "admissionQueueDepth": admissionQueueDepth = Integer.parseInt(value); break;
+            case "admissionUtilization": admissionUtilization = Double.parseDouble(value); break;
+            case "admissionWindow": admissionWindow = Double.parseDouble(value); break;
+            case "routineStreams": routineStreams = value; break;
+            case "diurnalPeriod": diurnalPeriod = Double.parseDouble(value); break;
+            case "diurnalAmplitude": diurnalAmplitude = Double.parseDouble(value); break;
+            case "autoscale": autoscale = Boolean.parseBoolean(value); break;
+            case "autoscaleInterval": autoscaleInterval = Double.parseDouble(value); break;
+            case "minEdges": minEdges = Integer.parseInt(value); break;
+            case "scaleUpUtilization": scaleUpUtilization = Double.parseDouble(value); break;
+            case "scaleDownUtilization": scaleDownUtilization = Double.parseDouble(value); break;
+            case "latencySlo": latencySlo = Double.parseDouble(value); break;
+            case "edgeBootTime": edgeBootTime = Double.parseDouble(value); break;
+            case "edgeSleepPower": edgeSleepPower = Double.parseDouble(value); break;
+            case "edgeHourlyCost": edgeHourlyCost = Double.parseDouble(value); break;
+            case "storageDir": storageDir = value; break;
+            case "storageBlockPoints": storageBlockPoints = Integer.parseInt(value); break;
+            case "displayPoints": displayPoints = Integer.parseInt(value); break;
+            case "storageReferenceMips": storageReferenceMips = Double.parseDouble(value); break;
+            case "storageProfile": storageProfile = value; break;
+            case "modelFile": modelFile = value; break;
+            case "edgeProfile": edgeProfile = value; break;
+            case "cloudProfile": cloudProfile = value; break;
+            case "metricsDir": metricsDir = value; break;
+            case "utilizationInterval": utilizationInterval = Double.parseDouble(value); break;
+            case "duration": duration = Integer.parseInt(value); break;
+            case "checkpointInterval": checkpointInterval = Double.parseDouble(value); break;
+            case "checkpointDir": checkpointDir = value; break;
+            case "checkpointKeep": checkpointKeep = Integer.parseInt(value); break;
+            case "resumeFrom": resumeFrom = value; break;
+            case "partitions": partitions = Integer.parseInt(value); break;
+            case "progressInterval": progressInterval = Double.parseDouble(value); break;
+            case "progressFile": progressFile = value; break;
+            case "progressPort": progressPort = Integer.parseInt(value); break;
+            case "verbose": verbose = Boolean.parseBoolean(value); break;
+            case "resultFile": resultFile = value; break;
+            default: throw new IllegalArgumentException("Unknown option: --" + name);
+        }
+    }
+
+    // Converts the configuration back into arguments for a separate simulation process
+    List<String> toArgs() {
+        List<String> args = new ArrayList<>();
+        args.add("--placement=" + placement);
+        args.add("--reevaluationInterval=" + reevaluationInterval);
+        args.add("--saturation=" + saturation);
+        args.add("--edgeUplinkLatency=" + edgeUplinkLatency);
+        args.add("--mobileUplinkLatency=" + mobileUplinkLatency);
+        args.add("--mobileMips=" + mobileMips);
+        args.add("--edges=" + edges);
+        args.add("--gatewaysPerEdge=" + gatewaysPerEdge);
+        args.add("--patientsPerGateway=" + patientsPerGateway);
+        args.add("--sensorInterval=" + sensorInterval);
+        if (traceFile != null) {
+            args.add("--traceFile=" + traceFile);
+        }
+        if (traceTimeColumn != null) {
+            args.add("--traceTimeColumn=" + traceTimeColumn);
+        }
+        args.add("--traceTimeScale=" + traceTimeScale);
+        args.add("--encoding=" + encoding);
+        args.add("--encodingBatch=" + encodingBatch);
+        args.add("--fusion=" + fusion);
+        args.add("--fusionBatchSize=" + fusionBatchSize);
+        args.add("--fusionWindow=" + fusionWindow);
+        args.add("--predictorCache=" + predictorCache);
+        args.add("--cacheSize=" + cacheSize);
+        args.add("--cacheTtl=" + cacheTtl);
+        args.add("--cacheTolerance=" + cacheTolerance);
+        args.add("--cacheHitCpu=" + cacheHitCpu);
+        args.add("--vitalsVolatility=" + vitalsVolatility);
+        args.add("--admission=" + admission);
+        args.add("--admissionConcurrency=" + admissionConcurrency);
+        args.add("--admissionQueueDepth=" + admissionQueueDepth);
+        args.add("--admissionUtilization=" + admissionUtilization);
+        args.add("--admissionWindow=" + admissionWindow);
+        args.add("--routineStreams=" + routineStreams);
+        args.add("--diurnalPeriod=" + diurnalPeriod);
+        args.add("--diurnalAmplitude=" + diurnalAmplitude);
+        args.add("--autoscale=" + autoscale);
+        args.add("--autoscaleInterval=" + autoscaleInterval);
+        args.add("--minEdges=" + minEdges);
+        args.add("--scaleUpUtilization=" + scaleUpUtilization);
+        args.add("--scaleDownUtilization=" + scaleDownUtilization);
+        args.add("--latencySlo=" + latencySlo);
+        args.add("--edgeBootTime=" + edgeBootTime);
+        args.add("--edgeSleepPower=" + edgeSleepPower);
+        args.add("--edgeHourlyCost=" + edgeHourlyCost);
+        if (storageDir != null) {
+            args.add("--storageDir=" + storageDir);
+        }
+        args.add("--storageBlockPoints=" + storageBlockPoints);
+        args.add("--displayPoints=" + displayPoints);
+        args.add("--storageReferenceMips=" + storageReferenceMips);
+        if (storageProfile != null) {
+            args.add("--storageProfile=" + storageProfile);
+        }
+        if (modelFile != null) {
+            args.add("--modelFile=" + modelFile);
+        }
+        if (edgeProfile != null) {
+            args.add("--edgeProfile=" + edgeProfile);
+        }
+        if (cloudProfile != null) {
+            args.add("--cloudProfile=" + cloudProfile);
+        }
+        args.add("--utilizationInterval=" + utilizationInterval);
+        if (metricsDir != null) {
+            args.add("--metricsDir=" + metricsDir);
+        }
+        args.add("--duration=" + duration);
+        args.add("--checkpointInterval=" + checkpointInterval);
+        args.add("--checkpointDir=" + checkpointDir);
+        args.add("--checkpointKeep=" + checkpointKeep);
+        if (resumeFrom != null) {
+            args.add("--resumeFrom=" + resumeFrom);
+        }
+        args.add("--partitions=" + partitions);
+        args.add("--progressInterval=" + progressInterval);
+        if (progressFile != null) {
+            args.add("--progressFile=" + progressFile);
+        }
+        args.add("--progressPort=" + progressPort);
+        args.add("--verbose=" + verbose);
+        if (resultFile != null) {
+            args.add("--resultFile=" + resultFile);
+        }
+        return args;
+    }
+
+    // Column names and values used in sweep reports
+    static String csvHeader() {
+        return "placement,edgeUplinkLatency,mobileUplinkLatency,mobileMips,edges,gatewaysPerEdge,patientsPerGateway,sensorInterval,"
+                + "encoding,encodingBatch,fusion,fusionBatchSize,fusionWindow,admission,partitions,autoscale,latencySlo";
+    }
+
+    String toCsv() {
+        return placement + "," + edgeUplinkLatency + "," + mobileUplinkLatency + "," + mobileMips + ","
+                + edges + "," + gatewaysPerEdge + "," + patientsPerGateway + "," + sensorInterval + ","
+                + encoding + "," + encodingBatch + "," + fusion + "," + fusionBatchSize + "," + fusionWindow + "," + admission + "," + partitions + "," + autoscale + "," + latencySlo;
+    }
+}
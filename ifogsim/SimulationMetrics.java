@@ -0,0 +1,277 @@
+package org.fog.test.perfeval;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.ObjLongConsumer;
+
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.fog.entities.FogDevice;
+import org.fog.entities.Tuple;
+
+public class SimulationMetrics implements Snapshot.Restorable {
+
+    // Name of the monitored loop in the exported files
+    private static final String LOOP_NAME = String.join("-", SmartHealthSim.LOOP_MODULES);
+
+    // Percentiles reported for every histogram
+    private static final double[] PERCENTILES = {50, 95, 99};
+
+    // Like iFogSim's TimeKeeper, one instance per simulation JVM
+    private static SimulationMetrics instance;
+
+    static SimulationMetrics getInstance() {
+        if (instance == null) {
+            instance = new SimulationMetrics();
+        }
+        return instance;
+    }
+
+    // Starts with empty metrics, for several runs in one JVM such as benchmarks
+    static void reset() {
+        instance = null;
+    }
+
+    // Events processed by the fog devices, the bulk of all simulation events
+    long deviceEvents = 0;
+
+    // Delay of every completed application loop
+    final LatencyHistogram loopLatency = new LatencyHistogram();
+
+    // Loop delay split by the priority class of the sensor reading that started the loop
+    final LatencyHistogram[] loopLatencyByPriority = new LatencyHistogram[TuplePriority.NAMES.length];
+
+    // Loop delay since the last call to takeIntervalLoopLatency, only recorded once it has been called
+    private LatencyHistogram intervalLoopLatency;
+
+    // Loop delay since the last call to takeProgressLoopLatency, for the rolling delay of the progress samples
+    private LatencyHistogram progressLoopLatency;
+
+    // Tuples emitted but not yet finished by their destination module, per tuple type; only counted once
+    // countInFlight has been called
+    private Map<String, long[]> inFlight;
+
+    // Per tuple type: time on the CPU and time spent waiting (for a free uplink or for a share of the CPU)
+    private final Map<String, LatencyHistogram> executionTime = new TreeMap<>();
+    private final Map<String, LatencyHistogram> queueingTime = new TreeMap<>();
+
+    // In-flight tuples by cloudlet id: time they entered an uplink queue, accumulated wait and execution start
+    private final Map<Integer, Double> linkQueuedAt = new HashMap<>();
+    private final Map<Integer, Double> waited = new HashMap<>();
+    private final Map<Integer, double[]> executing = new HashMap<>();
+
+    // MI completed on each device since the last utilization sample
+    private final Map<Integer, Double> deviceWork = new HashMap<>();
+    private transient PrintWriter utilizationOut;
+
+    // The utilization log and the characters written to it, so a resumed run can cut off the rows written after its
+    // checkpoint and append to it
+    private String utilizationFile;
+    private long utilizationLength = 0;
+
+    private SimulationMetrics() {
+        for (int i = 0; i < loopLatencyByPriority.length; i++) {
+            loopLatencyByPriority[i] = new LatencyHistogram();
+        }
+    }
+
+    void loopCompleted(double delay, int priority) {
+        loopLatency.recordValue(delay);
+        loopLatencyByPriority[priority].recordValue(delay);
+        if (intervalLoopLatency != null) {
+            intervalLoopLatency.recordValue(delay);
+        }
+        if (progressLoopLatency != null) {
+            progressLoopLatency.recordValue(delay);
+        }
+    }
+
+    // Returns the loop delays recorded since the previous call and starts a new interval
+    LatencyHistogram takeIntervalLoopLatency() {
+        LatencyHistogram interval = intervalLoopLatency;
+        intervalLoopLatency = new LatencyHistogram();
+        return interval != null ? interval : new LatencyHistogram();
+    }
+
+    LatencyHistogram takeProgressLoopLatency() {
+        LatencyHistogram interval = progressLoopLatency;
+        progressLoopLatency = new LatencyHistogram();
+        return interval != null ? interval : new LatencyHistogram();
+    }
+
+    void countInFlight() {
+        if (inFlight == null) {
+            inFlight = new TreeMap<>();
+        }
+    }
+
+    boolean countsInFlight() {
+        return inFlight != null;
+    }
+
+    void tupleEmitted(Tuple tuple) {
+        if (inFlight != null) {
+            inFlight.computeIfAbsent(tuple.getTupleType(), type -> new long[1])[0]++;
+        }
+    }
+
+    // Called when a module finished the tuple, or when admission control dropped it (through tupleShed)
+    void tupleDone(Tuple tuple) {
+        if (inFlight != null) {
+            long[] count = inFlight.get(tuple.getTupleType());
+            if (count != null) {
+                count[0]--;
+            }
+        }
+    }
+
+    // Calls the consumer with every tuple type and its tuples in flight
+    void forEachInFlight(ObjLongConsumer<String> consumer) {
+        if (inFlight != null) {
+            inFlight.forEach((type, count) -> consumer.accept(type, count[0]));
+        }
+    }
+
+    void linkQueued(Tuple tuple) {
+        linkQueuedAt.put(tuple.getCloudletId(), CloudSim.clock());
+    }
+
+    void linkSent(Tuple tuple) {
+        Double queuedAt = linkQueuedAt.remove(tuple.getCloudletId());
+        if (queuedAt != null) {
+            waited.merge(tuple.getCloudletId(), CloudSim.clock() - queuedAt, Double::sum);
+        }
+    }
+
+    // A shed tuple never completes, so the link waits recorded on its way here are dropped with it
+    void tupleShed(Tuple tuple) {
+        linkQueuedAt.remove(tuple.getCloudletId());
+        waited.remove(tuple.getCloudletId());
+        tupleDone(tuple);
+    }
+
+    void tupleStarted(Tuple tuple, double mips) {
+        executing.put(tuple.getCloudletId(), new double[]{CloudSim.clock(), tuple.getCloudletLength() / mips});
+    }
+
+    // Execution time is the CPU time the tuple needs on its own; the rest of its stay is queueing behind other tuples
+    void tupleCompleted(Tuple tuple, int deviceId) {
+        double[] started = executing.remove(tuple.getCloudletId());
+        Double linkWait = waited.remove(tuple.getCloudletId());
+        if (started == null) {
+            return;
+        }
+        double elapsed = CloudSim.clock() - started[0];
+        double service = Math.min(started[1], elapsed);
+        double queueing = elapsed - service + (linkWait == null ? 0 : linkWait);
+        executionTime.computeIfAbsent(tuple.getTupleType(), type -> new LatencyHistogram()).recordValue(service);
+        queueingTime.computeIfAbsent(tuple.getTupleType(), type -> new LatencyHistogram()).recordValue(queueing);
+        deviceWork.merge(deviceId, (double) tuple.getCloudletLength(), Double::sum);
+    }
+
+    // Utilization samples are streamed to the file so memory stays flat however long the run is
+    void openUtilizationLog(Path file) throws IOException {
+        utilizationFile = file.toString();
+        utilizationOut = new PrintWriter(Files.newBufferedWriter(file));
+        printUtilization("time,device,utilization");
+    }
+
+    private void printUtilization(String line) {
+        utilizationOut.println(line);
+        utilizationLength += line.length() + System.lineSeparator().length();
+    }
+
+    // Called before a checkpoint, so the file holds everything counted in utilizationLength
+    void flushUtilizationLog() {
+        if (utilizationOut != null) {
+            utilizationOut.flush();
+        }
+    }
+
+    @Override
+    public void restore() throws IOException {
+        if (utilizationFile != null) {
+            try (FileChannel channel = FileChannel.open(Paths.get(utilizationFile), StandardOpenOption.WRITE)) {
+                channel.truncate(utilizationLength);
+            }
+            utilizationOut = new PrintWriter(Files.newBufferedWriter(Paths.get(utilizationFile), StandardOpenOption.APPEND));
+        }
+    }
+
+    void sampleUtilization(List<FogDevice> devices, double interval) {
+        if (utilizationOut != null) {
+            double now = CloudSim.clock();
+            for (FogDevice device : devices) {
+                double work = deviceWork.getOrDefault(device.getId(), 0.0);
+                double utilization = Math.min(1, work / (device.getHost().getTotalMips() * interval));
+                printUtilization(now + "," + device.getName() + "," + utilization);
+            }
+        }
+        deviceWork.clear();
+    }
+
+    // Writes loop-latency.csv/json and tuple-types.csv/json to the directory and closes the utilization log
+    void export(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        if (utilizationOut != null) {
+            utilizationOut.close();
+        }
+
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(dir.resolve("loop-latency.csv")))) {
+            out.println(csvHeader("loop"));
+            out.println(csvRow(LOOP_NAME, loopLatency));
+            for (int i = 0; i < loopLatencyByPriority.length; i++) {
+                out.println(csvRow(LOOP_NAME + "/" + TuplePriority.NAMES[i], loopLatencyByPriority[i]));
+            }
+        }
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(dir.resolve("loop-latency.json")))) {
+            List<String> priorities = new ArrayList<>();
+            for (int i = 0; i < loopLatencyByPriority.length; i++) {
+                priorities.add("\"" + TuplePriority.NAMES[i] + "\": {" + json(loopLatencyByPriority[i]) + "}");
+            }
+            out.println("{\"loop\": \"" + LOOP_NAME + "\", " + json(loopLatency)
+                    + ", \"priorities\": {" + String.join(", ", priorities) + "}}");
+        }
+
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(dir.resolve("tuple-types.csv")))) {
+            out.println("tupleType,metric," + csvHeader("").substring(1));
+            for (String type : executionTime.keySet()) {
+                out.println(type + ",execution," + csvRow("", executionTime.get(type)).substring(1));
+                out.println(type + ",queueing," + csvRow("", queueingTime.get(type)).substring(1));
+            }
+        }
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(dir.resolve("tuple-types.json")))) {
+            List<String> entries = new ArrayList<>();
+            for (String type : executionTime.keySet()) {
+                entries.add("\"" + type + "\": {\"execution\": {" + json(executionTime.get(type))
+                        + "}, \"queueing\": {" + json(queueingTime.get(type)) + "}}");
+            }
+            out.println("{" + String.join(", ", entries) + "}");
+        }
+    }
+
+    private static String csvHeader(String first) {
+        StringBuilder header = new StringBuilder(first + ",count,mean");
+        for (double p : PERCENTILES) {
+            header.append(",p").append((int) p);
+        }
+        return header.append(",max").toString();
+    }
+
+    private static String csvRow(String first, LatencyHistogram histogram) {
+        StringBuilder row = new StringBuilder(first + "," + histogram.getTotalCount() + "," + histogram.getMean());
+        for (double p : PERCENTILES) {
+            row.append(',').append(histogram.getValueAtPercentile(p));
+        }
+        return row.append(',').append(histogram.getMax()).toString();
+    }
+
+    private static String json(LatencyHistogram histogram) {
+        StringBuilder json = new StringBuilder("\"count\": " + histogram.getTotalCount() + ", \"mean\": " + histogram.getMean());
+        for (double p : PERCENTILES) {
+            json.append(", \"p").append((int) p).append("\": ").append(histogram.getValueAtPercentile(p));
+        }
+        return json.append(", \"max\": ").append(histogram.getMax()).toString();
+    }
+}
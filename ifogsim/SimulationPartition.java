@@ -0,0 +1,188 @@
+package org.fog.test.perfeval;
+
+import java.lang.reflect.Field;
+import java.util.*;
+
+import org.cloudbus.cloudsim.UtilizationModelFull;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.FutureQueue;
+import org.cloudbus.cloudsim.core.SimEntity;
+import org.fog.entities.FogDevice;
+import org.fog.entities.Tuple;
+import org.fog.utils.FogEvents;
+import org.fog.utils.FogUtils;
+import org.fog.utils.NetworkUsageMonitor;
+import org.fog.utils.TimeKeeper;
+
+public class SimulationPartition {
+
+    // Fields of a tuple crossing to another partition; the coordinator only reads the target device
+    static final int SOURCE = 0;
+    static final int TARGET = 1;
+    private static final int ARRIVAL = 2;
+    private static final int APP_ID = 3;
+    private static final int DIRECTION = 4;
+    private static final int LENGTH = 5;
+    private static final int PES = 6;
+    private static final int FILE_SIZE = 7;
+    private static final int OUTPUT_SIZE = 8;
+    private static final int USER_ID = 9;
+    private static final int TUPLE_TYPE = 10;
+    private static final int SRC_MODULE = 11;
+    private static final int DEST_MODULE = 12;
+    private static final int ACTUATOR_ID = 13;
+    private static final int SOURCE_DEVICE_ID = 14;
+    private static final int SOURCE_MODULE_ID = 15;
+    private static final int MODULE_COPY_MAP = 16;
+    private static final int PRIORITY = 17;
+    private static final int EMIT_TIME = 18;
+
+    private final SimulationSession run;
+    private final boolean cloudTier;
+
+    // Devices this partition simulates for real; the stand-ins of other partitions' devices are left out of the results
+    private final List<FogDevice> owned = new ArrayList<>();
+
+    // Tuples posted to other partitions since the last call to advance
+    private final List<Object[]> outbox = new ArrayList<>();
+
+    private final FutureQueue future;
+    private final List<SimEntity> entities;
+
+    // Sets up the cloud tier with a stand-in for every edge, or the edges firstEdge to lastEdge - 1 with their
+    // gateways and patients below a stand-in for the cloud. Every partition is loaded by its own class loader, so it
+    // has its own CloudSim; PartitionedSimulation calls it by reflection with JDK types only, hence the public methods.
+    public SimulationPartition(String[] args, boolean cloudTier, int firstEdge, int lastEdge) throws Exception {
+        SimulationConfig config = SimulationConfig.fromArgs(args);
+        config.resultFile = null;
+        SmartHealthSim.setUp(config, firstEdge, lastEdge, !cloudTier);
+        this.run = SmartHealthSim.session;
+        this.cloudTier = cloudTier;
+        run.controller.setExitOnStop(false);
+
+        if (cloudTier) {
+            run.topology.cloud.setRemoteChildren(this);
+            owned.add(run.topology.cloud);
+        } else {
+            for (SmartHealthFogDevice edge : run.topology.edges) {
+                edge.setRemoteParent(this);
+            }
+            owned.addAll(run.topology.edges);
+            owned.addAll(run.topology.gateways);
+        }
+
+        // Windows are run tick by tick instead of through startSimulation, which only stops at the end of the run
+        CloudSim.runStart();
+        Field futureField = CloudSim.class.getDeclaredField("future");
+        futureField.setAccessible(true);
+        future = (FutureQueue) futureField.get(null);
+        entities = CloudSim.getEntityList();
+    }
+
+    // Called by a device whose link ends in another partition. The loop start time goes with the tuple, since the
+    // loop delay is measured where the loop ends.
+    void post(SmartHealthFogDevice from, int toId, Tuple tuple, double arrival) {
+        Double emitTime = TimeKeeper.getInstance().getEmitTimes().remove(tuple.getActualTupleId());
+        PatientTuples.remove(tuple);
+
+        Object[] message = new Object[EMIT_TIME + 1];
+        message[SOURCE] = from.getName();
+        message[TARGET] = CloudSim.getEntityName(toId);
+        message[ARRIVAL] = arrival;
+        message[APP_ID] = tuple.getAppId();
+        message[DIRECTION] = tuple.getDirection();
+        message[LENGTH] = tuple.getCloudletLength();
+        message[PES] = tuple.getNumberOfPes();
+        message[FILE_SIZE] = tuple.getCloudletFileSize();
+        message[OUTPUT_SIZE] = tuple.getCloudletOutputSize();
+        message[USER_ID] = tuple.getUserId();
+        message[TUPLE_TYPE] = tuple.getTupleType();
+        message[SRC_MODULE] = tuple.getSrcModuleName();
+        message[DEST_MODULE] = tuple.getDestModuleName();
+        message[ACTUATOR_ID] = tuple.getActuatorId();
+        message[SOURCE_DEVICE_ID] = tuple.getSourceDeviceId();
+        message[SOURCE_MODULE_ID] = tuple.getSourceModuleId();
+        message[MODULE_COPY_MAP] = new HashMap<>(tuple.getModuleCopyMap());
+        message[PRIORITY] = TuplePriority.of(tuple);
+        message[EMIT_TIME] = emitTime;
+        outbox.add(message);
+    }
+
+    // Schedules the arrival of tuples posted by other partitions. Tuple ids are only unique within a partition, so
+    // every tuple gets new ones here.
+    @SuppressWarnings("unchecked")
+    public void deliver(List<Object[]> messages) {
+        for (Object[] message : messages) {
+            SmartHealthFogDevice target = run.topology.getDevice((String) message[TARGET]);
+            SmartHealthFogDevice source = run.topology.getDevice((String) message[SOURCE]);
+
+            Tuple tuple = new Tuple((String) message[APP_ID], FogUtils.generateTupleId(), (Integer) message[DIRECTION],
+                    (Long) message[LENGTH], (Integer) message[PES], (Long) message[FILE_SIZE], (Long) message[OUTPUT_SIZE],
+                    new UtilizationModelFull(), new UtilizationModelFull(), new UtilizationModelFull());
+            tuple.setUserId((Integer) message[USER_ID]);
+            tuple.setTupleType((String) message[TUPLE_TYPE]);
+            tuple.setSrcModuleName((String) message[SRC_MODULE]);
+            tuple.setDestModuleName((String) message[DEST_MODULE]);
+            tuple.setActuatorId((Integer) message[ACTUATOR_ID]);
+            tuple.setSourceDeviceId((Integer) message[SOURCE_DEVICE_ID]);
+            tuple.setSourceModuleId((Integer) message[SOURCE_MODULE_ID]);
+            tuple.setModuleCopyMap((Map<String, Integer>) message[MODULE_COPY_MAP]);
+            TuplePriority.set(tuple, (Integer) message[PRIORITY]);
+
+            int actualTupleId = TimeKeeper.getInstance().getUniqueId();
+            tuple.setActualTupleId(actualTupleId);
+            if (message[EMIT_TIME] != null) {
+                TimeKeeper.getInstance().getEmitTimes().put(actualTupleId, (Double) message[EMIT_TIME]);
+            }
+
+            // The stand-in of the sending device receives the acknowledgement
+            int sourceId = source != null ? source.getId() : target.getId();
+            CloudSim.send(sourceId, target.getId(), (Double) message[ARRIVAL] - CloudSim.clock(), FogEvents.TUPLE_ARRIVAL, tuple);
+        }
+    }
+
+    // Processes every event before end and returns the tuples posted to other partitions meanwhile. A clock tick
+    // processes the events of the current time and then moves the clock to the next event time, so the events moved
+    // by the last tick are processed by running the entities directly, without moving the clock past end.
+    public List<Object[]> advance(double end) {
+        do {
+            while (nextEventTime() < end) {
+                CloudSim.runClockTick();
+            }
+            for (SimEntity entity : entities) {
+                if (entity.getState() == SimEntity.RUNNABLE) {
+                    entity.run();
+                }
+            }
+        } while (nextEventTime() < end);
+
+        List<Object[]> posted = new ArrayList<>(outbox);
+        outbox.clear();
+        return posted;
+    }
+
+    private double nextEventTime() {
+        return future.size() == 0 ? Double.POSITIVE_INFINITY : future.iterator().next().eventTime();
+    }
+
+    // Runs the stop actions and returns the raw results of this partition, which PartitionedSimulation merges
+    public Map<String, Object> finish() {
+        run.controller.runStopActions();
+
+        Map<String, Object> results = new LinkedHashMap<>();
+        results.put("energy", owned.stream().mapToDouble(FogDevice::getEnergyConsumption).sum());
+        results.put("cloudCost", cloudTier ? run.topology.cloud.getTotalCost() : 0.0);
+        results.put("networkUsage", NetworkUsageMonitor.getNetworkUsage());
+
+        // Only one loop is defined, so the first average is the SensorReader -> DisplayModule delay
+        TimeKeeper timeKeeper = TimeKeeper.getInstance();
+        results.put("loopDelay", timeKeeper.getLoopIdToCurrentAverage().values().stream().findFirst().orElse(Double.NaN));
+        results.put("loops", timeKeeper.getLoopIdToCurrentNum().values().stream().findFirst().orElse(0));
+        results.putAll(run.controller.metricValues());
+
+        // Stand-ins also process resource management events and link acknowledgements, which a sequential run
+        // does not have
+        results.put("deviceEvents", owned.stream().mapToLong(device -> ((SmartHealthFogDevice) device).events).sum());
+        return results;
+    }
+}
@@ -0,0 +1,62 @@
+package org.fog.test.perfeval;
+
+import org.fog.application.Application;
+
+public class SimulationSession {
+
+    // The objects of one run that its metrics and stop actions read. SmartHealthSim keeps the session in a static
+    // field, so a checkpoint restores it with the rest of the simulation and the metrics can be registered again.
+    SimulationConfig config;
+    SmartHealthTopology topology;
+    Application application;
+    SmartHealthController controller;
+
+    // Only set for the adaptive placement, with edge autoscaling, with progress samples and with a time-series
+    // store behind DataStorage
+    AdaptiveModulePlacement placement;
+    EdgeAutoscaler autoscaler;
+    ProgressMonitor progress;
+    TimeSeriesStore store;
+    StorageCostModel storageCost;
+
+    // Measured sizes of sensor readings and feature records in the configured wire format
+    PayloadSizeModel payload;
+
+    // CPU length of a PREDICTION_TASK on the edges and on the cloud
+    double predictionCpu;
+    double cloudPredictionCpu;
+
+    // Applies an option given when resuming from a checkpoint. Only options that can change in a running
+    // simulation are accepted; everything else is part of the restored state.
+    void branch(String name, String value) {
+        switch (name) {
+            case "verbose":
+            case "checkpointInterval":
+            case "checkpointDir":
+            case "checkpointKeep":
+                config.set(name, value);
+                break;
+            case "resultFile":
+                config.set(name, value);
+                controller.setResultFile(config.resultFile);
+                break;
+            case "saturation":
+                config.set(name, value);
+                if (placement != null) {
+                    placement.setSaturation(config.saturation);
+                }
+                break;
+            case "admissionQueueDepth":
+            case "admissionUtilization":
+                config.set(name, value);
+                for (SmartHealthFogDevice edge : topology.edges) {
+                    if (edge.getAdmissionController() != null) {
+                        edge.getAdmissionController().setThresholds(config.admissionQueueDepth, config.admissionUtilization);
+                    }
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("--" + name + " cannot be changed when resuming from a checkpoint");
+        }
+    }
+}
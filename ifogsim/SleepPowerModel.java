@@ -0,0 +1,24 @@
+package org.fog.test.perfeval;
+
+import org.fog.utils.FogLinearPowerModel;
+
+public class SleepPowerModel extends FogLinearPowerModel {
+
+    private boolean poweredOn = true;
+    private double sleepPower = 0;
+
+    // iFogSim's linear model between idle and busy power while the device is on, a fixed sleep power while it is off
+    public SleepPowerModel(double busyPower, double idlePower) {
+        super(busyPower, idlePower);
+    }
+
+    @Override
+    public double getPower(double utilization) {
+        return poweredOn ? super.getPower(utilization) : sleepPower;
+    }
+
+    void setPoweredOn(boolean poweredOn, double sleepPower) {
+        this.poweredOn = poweredOn;
+        this.sleepPower = sleepPower;
+    }
+}
@@ -0,0 +1,75 @@
+package org.fog.test.perfeval;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.SimEntity;
+import org.fog.application.AppEdge;
+import org.fog.application.Application;
+import org.fog.entities.Tuple;
+
+public class SmartHealthApplication extends Application {
+
+    // Module whose finished tuples are written to the time-series store
+    private static final String STORAGE_MODULE = "DataStorage";
+
+    // Optional per-patient store written by DataStorage
+    private TimeSeriesStore store;
+
+    public SmartHealthApplication(String appId, int userId) {
+        super(appId, userId);
+    }
+
+    void setStore(TimeSeriesStore store) {
+        this.store = store;
+    }
+
+    // iFogSim asks for the resultant tuples once a module finishes a tuple, so this is where execution ends
+    @Override
+    public final List<Tuple> getResultantTuples(String moduleName, Tuple inputTuple, int sourceDeviceId, int sourceModuleId) {
+        SimulationMetrics.getInstance().tupleCompleted(inputTuple, sourceDeviceId);
+        SimEntity device = CloudSim.getEntity(sourceDeviceId);
+        if (device instanceof SmartHealthFogDevice) {
+            ((SmartHealthFogDevice) device).tupleFinished(moduleName);
+        }
+        if (store != null && STORAGE_MODULE.equals(moduleName)) {
+            PatientTuples.Reading reading = PatientTuples.get(inputTuple);
+            if (reading != null) {
+                try {
+                    store.append(reading.patient, Math.round(CloudSim.clock() * 1000), reading.values);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+        List<Tuple> outputs = emitTuples(moduleName, inputTuple, sourceDeviceId, sourceModuleId);
+        PatientTuples.transfer(inputTuple, outputs);
+
+        SimulationMetrics.getInstance().tupleDone(inputTuple);
+        countEmitted(outputs);
+        return outputs;
+    }
+
+    // Tuples to the actuator end there without a module finishing them, so they are not counted in flight
+    protected void countEmitted(List<Tuple> outputs) {
+        SimulationMetrics metrics = SimulationMetrics.getInstance();
+        if (metrics.countsInFlight()) {
+            for (Tuple output : outputs) {
+                if (getEdgeMap().get(output.getTupleType()).getEdgeType() != AppEdge.ACTUATOR) {
+                    metrics.tupleEmitted(output);
+                }
+            }
+        }
+    }
+
+    // Creates the output tuples of a finished tuple from the module's selectivity; they keep its priority class
+    protected List<Tuple> emitTuples(String moduleName, Tuple inputTuple, int sourceDeviceId, int sourceModuleId) {
+        List<Tuple> outputs = super.getResultantTuples(moduleName, inputTuple, sourceDeviceId, sourceModuleId);
+        for (Tuple output : outputs) {
+            TuplePriority.set(output, TuplePriority.of(inputTuple));
+        }
+        return outputs;
+    }
+}
@@ -0,0 +1,119 @@
+package org.fog.test.perfeval;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.*;
+import java.util.function.Supplier;
+
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.SimEvent;
+import org.fog.entities.*;
+import org.fog.placement.Controller;
+import org.fog.utils.Config;
+import org.fog.utils.FogEvents;
+import org.fog.utils.NetworkUsageMonitor;
+import org.fog.utils.TimeKeeper;
+
+public class SmartHealthController extends Controller implements Snapshot.Restorable {
+
+    private String resultFile;
+
+    // Extra metrics written next to the iFogSim ones, e.g. by optional pipeline stages. Like the stop actions they
+    // are lambdas, which a checkpoint cannot capture, so a resumed run registers them again.
+    private transient Map<String, Supplier<Object>> metrics = new LinkedHashMap<>();
+
+    // Actions run when the simulation stops, before the base controller exits the JVM
+    private transient List<Runnable> stopActions = new ArrayList<>();
+
+    // Whether the run ends like iFogSim's controller, by exiting the JVM, or returns from startSimulation
+    private boolean exitOnStop = true;
+
+    public SmartHealthController(String name, List<FogDevice> fogDevices, List<Sensor> sensors,
+                                 List<Actuator> actuators, String resultFile) {
+        super(name, fogDevices, sensors, actuators);
+        this.resultFile = resultFile;
+    }
+
+    void addMetric(String name, Supplier<Object> value) {
+        metrics.put(name, value);
+    }
+
+    void addStopAction(Runnable action) {
+        stopActions.add(action);
+    }
+
+    void setExitOnStop(boolean exitOnStop) {
+        this.exitOnStop = exitOnStop;
+    }
+
+    void setResultFile(String resultFile) {
+        this.resultFile = resultFile;
+    }
+
+    // Current value of every extra metric, e.g. to merge the results of a partitioned run
+    Map<String, Object> metricValues() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        metrics.forEach((name, value) -> values.put(name, value.get()));
+        return values;
+    }
+
+    void runStopActions() {
+        stopActions.forEach(Runnable::run);
+    }
+
+    @Override
+    public void restore() {
+        metrics = new LinkedHashMap<>();
+        stopActions = new ArrayList<>();
+    }
+
+    @Override
+    public void processEvent(SimEvent ev) {
+        // The base controller prints its results and exits the JVM on stop, so the metrics are saved first
+        if (ev.getTag() == FogEvents.STOP_SIMULATION) {
+            runStopActions();
+            printMetrics();
+            if (resultFile != null) {
+                writeResults();
+            }
+            if (!exitOnStop) {
+                CloudSim.abruptallyTerminate();
+                return;
+            }
+        }
+        super.processEvent(ev);
+    }
+
+    private void printMetrics() {
+        for (Map.Entry<String, Supplier<Object>> metric : metrics.entrySet()) {
+            System.out.println(metric.getKey() + " = " + metric.getValue().get());
+        }
+    }
+
+    private void writeResults() {
+        double energy = 0;
+        double cost = 0;
+        for (FogDevice device : getFogDevices()) {
+            energy += device.getEnergyConsumption();
+            if (device.getParentId() == -1) {
+                cost += device.getTotalCost();
+            }
+        }
+
+        // Only one loop is defined, so the first average is the SensorReader -> DisplayModule delay
+        Double loopDelay = TimeKeeper.getInstance().getLoopIdToCurrentAverage().values().stream()
+                .findFirst().orElse(Double.NaN);
+
+        try (PrintWriter out = new PrintWriter(resultFile)) {
+            out.println("loopDelay=" + loopDelay);
+            out.println("energy=" + energy);
+            out.println("cloudCost=" + cost);
+            out.println("networkUsage=" + NetworkUsageMonitor.getNetworkUsage() / Config.MAX_SIMULATION_TIME);
+            for (Map.Entry<String, Supplier<Object>> metric : metrics.entrySet()) {
+                out.println(metric.getKey() + "=" + metric.getValue().get());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
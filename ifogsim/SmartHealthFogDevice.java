@@ -0,0 +1,308 @@
+package org.fog.test.perfeval;
+
+import java.util.*;
+
+import org.cloudbus.cloudsim.Storage;
+import org.cloudbus.cloudsim.VmAllocationPolicy;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.SimEntity;
+import org.cloudbus.cloudsim.core.SimEvent;
+import org.fog.application.AppLoop;
+import org.fog.application.Application;
+import org.fog.entities.*;
+import org.fog.utils.FogEvents;
+import org.fog.utils.NetworkUsageMonitor;
+import org.fog.utils.TimeKeeper;
+
+public class SmartHealthFogDevice extends FogDevice {
+
+    private static final String PREDICTOR = "Predictor";
+
+    // Event tag outside the range used by FogEvents
+    private static final int ADMISSION_DISPATCH = 9003;
+    private static final int FUSION_WINDOW = 9008;
+
+    // Modules hosted here whose tuples are currently passed on to the parent instead
+    private final Set<String> offloadedModules = new HashSet<>();
+
+    // Optional cache of Predictor results, consulted before a PREDICTION_TASK runs here
+    private PredictionCache predictionCache;
+    private double cacheHitCpu;
+    double savedMi = 0;
+
+    // CPU length of each module's tuples on this device when it differs from the AppEdge, e.g. from a calibration
+    // profile measured on hardware like this one
+    private final Map<String, Double> moduleCpu = new HashMap<>();
+
+    // Optional priority scheduling and admission control for one module
+    private AdmissionController admission;
+
+    // Tuples that arrived for each destination module since the last call to drainArrivals
+    private final Map<String, Long> arrivals = new HashMap<>();
+
+    // MI of all tuples started here, a running total so several observers can measure the load over their own intervals
+    double startedMi = 0;
+
+    // Tuples started here that no module has finished yet
+    private int executing = 0;
+
+    private boolean poweredOn = true;
+
+    // Events processed by this device; SimulationMetrics.deviceEvents counts those of all devices
+    long events = 0;
+
+    // Set in a partitioned run when the parent or the children of this device are simulated by another partition;
+    // tuples sent over those links are handed to the partition instead of being scheduled here
+    private SimulationPartition remoteParent;
+    private SimulationPartition remoteChildren;
+
+    public SmartHealthFogDevice(String name, FogDeviceCharacteristics characteristics, VmAllocationPolicy vmAllocationPolicy,
+                                List<Storage> storageList, double schedulingInterval, double uplinkBandwidth,
+                                double downlinkBandwidth, double uplinkLatency, double ratePerMips) throws Exception {
+        super(name, characteristics, vmAllocationPolicy, storageList, schedulingInterval,
+                uplinkBandwidth, downlinkBandwidth, uplinkLatency, ratePerMips);
+    }
+
+    @Override
+    public void processEvent(SimEvent ev) {
+        SimulationMetrics.getInstance().deviceEvents++;
+        events++;
+        super.processEvent(ev);
+    }
+
+    @Override
+    protected void processTupleArrival(SimEvent ev) {
+        Tuple tuple = (Tuple) ev.getData();
+        String module = tuple.getDestModuleName();
+        if (module != null && tuple.getDirection() == Tuple.UP) {
+            arrivals.merge(module, 1L, Long::sum);
+
+            // An offloaded module keeps its instance here, so it can be moved back without a new deployment
+            if (offloadedModules.contains(module)) {
+                sendUp(tuple);
+                return;
+            }
+
+            if (admission != null && admission.controls(module) && hostsModule(this, tuple.getAppId(), module)) {
+                SimEntity parent = CloudSim.getEntity(getParentId());
+                boolean parentHosts = parent instanceof FogDevice && hostsModule((FogDevice) parent, tuple.getAppId(), module);
+                switch (admission.admit(tuple, parentHosts)) {
+                    case OFFLOAD:
+                        sendUp(tuple);
+                        return;
+                    case SHED:
+                        PatientTuples.remove(tuple);
+                        SimulationMetrics.getInstance().tupleShed(tuple);
+                        return;
+                    default:
+                        break;
+                }
+            }
+        }
+        super.processTupleArrival(ev);
+    }
+
+    private static boolean hostsModule(FogDevice device, String appId, String module) {
+        List<String> modules = device.getAppToModulesMap().get(appId);
+        return modules != null && modules.contains(module);
+    }
+
+    // Records the delay of every finished loop before iFogSim folds it into its running average
+    @Override
+    protected void updateTimingsOnReceipt(Tuple tuple) {
+        Application application = getApplicationMap().get(tuple.getAppId());
+        for (AppLoop loop : application.getLoops()) {
+            if (loop.hasEdge(tuple.getSrcModuleName(), tuple.getDestModuleName()) && loop.isEndModule(tuple.getDestModuleName())) {
+                Double emitTime = TimeKeeper.getInstance().getEmitTimes().get(tuple.getActualTupleId());
+                if (emitTime != null) {
+                    SimulationMetrics.getInstance().loopCompleted(CloudSim.clock() - emitTime, TuplePriority.of(tuple));
+                }
+            }
+        }
+        super.updateTimingsOnReceipt(tuple);
+    }
+
+    // Tuples of the controlled module only start while the admission controller has a free slot
+    @Override
+    protected void executeTuple(SimEvent ev, String moduleName) {
+        if (admission != null && admission.controls(moduleName) && !admission.tryStart(ev)) {
+            return;
+        }
+        startTuple(ev, moduleName);
+    }
+
+    private void startTuple(SimEvent ev, String moduleName) {
+        Tuple tuple = (Tuple) ev.getData();
+        // The patient stays registered until the tuple finishes and is handed on to its outputs
+        PatientTuples.Reading reading = PREDICTOR.equals(moduleName) ? PatientTuples.get(tuple) : null;
+        Double cpu = moduleCpu.get(moduleName);
+        if (cpu != null) {
+            tuple.setCloudletLength(Math.max(1, Math.round(cpu)));
+        }
+
+        // A cache hit only costs the lookup and emitting the stored PREDICTION_RESULT
+        if (predictionCache != null && reading != null && predictionCache.lookup(reading.values)) {
+            long hitLength = (long) Math.min(cacheHitCpu, tuple.getCloudletLength());
+            savedMi += tuple.getCloudletLength() - hitLength;
+            tuple.setCloudletLength(hitLength);
+        }
+
+        startedMi += tuple.getCloudletLength();
+        executing++;
+        SimulationMetrics.getInstance().tupleStarted(tuple, getHost().getTotalMips());
+        super.executeTuple(ev, moduleName);
+    }
+
+    // Called when a module finishes a tuple here; the next queued tuple is started from a separate event so the
+    // module's scheduler is not changed while iFogSim is still collecting its finished tuples
+    void tupleFinished(String moduleName) {
+        executing--;
+        if (admission != null && admission.controls(moduleName)) {
+            send(getId(), 0, ADMISSION_DISPATCH, moduleName);
+        }
+    }
+
+    @Override
+    protected void processOtherEvent(SimEvent ev) {
+        if (ev.getTag() == ADMISSION_DISPATCH) {
+            SimEvent next = admission.finished();
+            if (next != null) {
+                startTuple(next, (String) ev.getData());
+            }
+            return;
+        }
+        if (ev.getTag() == FUSION_WINDOW) {
+            closeFusionWindow((FusingApplication.FusionBuffer) ev.getData());
+            return;
+        }
+        super.processOtherEvent(ev);
+    }
+
+    void scheduleFusionWindow(double window, FusingApplication.FusionBuffer buffer) {
+        send(getId(), window, FUSION_WINDOW, buffer);
+    }
+
+    // Sends the fused tuples of a closed window on the way iFogSim sends the outputs of a finished tuple
+    private void closeFusionWindow(FusingApplication.FusionBuffer buffer) {
+        Tuple template = buffer.template;
+        if (template == null) {
+            return;
+        }
+        FusingApplication application = (FusingApplication) getApplicationMap().get(template.getAppId());
+        for (Tuple tuple : application.closeWindow(buffer)) {
+            tuple.setModuleCopyMap(new HashMap<>(template.getModuleCopyMap()));
+            tuple.getModuleCopyMap().put(template.getDestModuleName(), buffer.moduleId);
+            updateTimingsOnSending(tuple);
+            sendToSelf(tuple);
+        }
+    }
+
+    @Override
+    protected void sendUp(Tuple tuple) {
+        if (isNorthLinkBusy()) {
+            SimulationMetrics.getInstance().linkQueued(tuple);
+        }
+        super.sendUp(tuple);
+    }
+
+    @Override
+    protected void sendUpFreeLink(Tuple tuple) {
+        SimulationMetrics.getInstance().linkSent(tuple);
+        if (remoteParent == null) {
+            super.sendUpFreeLink(tuple);
+            return;
+        }
+
+        // Same link model as iFogSim, but the arrival at the parent is scheduled by the parent's partition
+        double networkDelay = tuple.getCloudletFileSize() / getUplinkBandwidth();
+        setNorthLinkBusy(true);
+        send(getId(), networkDelay, FogEvents.UPDATE_NORTH_TUPLE_QUEUE);
+        NetworkUsageMonitor.sendingTuple(getUplinkLatency(), tuple.getCloudletFileSize());
+        remoteParent.post(this, getParentId(), tuple, CloudSim.clock() + networkDelay + getUplinkLatency());
+    }
+
+    @Override
+    protected void sendDownFreeLink(Tuple tuple, int childId) {
+        if (remoteChildren == null) {
+            super.sendDownFreeLink(tuple, childId);
+            return;
+        }
+
+        double networkDelay = tuple.getCloudletFileSize() / getDownlinkBandwidth();
+        double latency = getChildToLatencyMap().get(childId);
+        setSouthLinkBusy(true);
+        send(getId(), networkDelay, FogEvents.UPDATE_SOUTH_TUPLE_QUEUE);
+        NetworkUsageMonitor.sendingTuple(latency, tuple.getCloudletFileSize());
+        remoteChildren.post(this, childId, tuple, CloudSim.clock() + networkDelay + latency);
+    }
+
+    void setPredictionCache(PredictionCache predictionCache, double cacheHitCpu) {
+        this.predictionCache = predictionCache;
+        this.cacheHitCpu = cacheHitCpu;
+    }
+
+    PredictionCache getPredictionCache() {
+        return predictionCache;
+    }
+
+    void setModuleCpu(String module, double cpu) {
+        moduleCpu.put(module, cpu);
+    }
+
+    double getModuleCpu(String module, double defaultCpu) {
+        return moduleCpu.getOrDefault(module, defaultCpu);
+    }
+
+    void setAdmissionController(AdmissionController admission) {
+        this.admission = admission;
+    }
+
+    AdmissionController getAdmissionController() {
+        return admission;
+    }
+
+    void setOffloaded(String module, boolean offloaded) {
+        if (offloaded) {
+            offloadedModules.add(module);
+        } else {
+            offloadedModules.remove(module);
+        }
+    }
+
+    boolean isOffloaded(String module) {
+        return offloadedModules.contains(module);
+    }
+
+    // iFogSim charges the energy of every period at the power drawn when the period is settled, so the period up to
+    // now is settled at the old power state before switching
+    void setPoweredOn(boolean poweredOn, double sleepPower) {
+        updateAllocatedMips(null);
+        ((SleepPowerModel) getHost().getPowerModel()).setPoweredOn(poweredOn, sleepPower);
+        this.poweredOn = poweredOn;
+    }
+
+    boolean isPoweredOn() {
+        return poweredOn;
+    }
+
+    void setRemoteParent(SimulationPartition partition) {
+        this.remoteParent = partition;
+    }
+
+    void setRemoteChildren(SimulationPartition partition) {
+        this.remoteChildren = partition;
+    }
+
+    // Tuples held here: executing, waiting for an admission slot or waiting for a free uplink or downlink
+    int queueDepth() {
+        return executing + (admission == null ? 0 : admission.waiting()) + getNorthTupleQueue().size()
+                + getSouthTupleQueue().size();
+    }
+
+    // Returns the arrival counts collected since the previous call and starts a new interval
+    Map<String, Long> drainArrivals() {
+        Map<String, Long> counts = new HashMap<>(arrivals);
+        arrivals.clear();
+        return counts;
+    }
+}
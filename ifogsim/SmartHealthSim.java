@@ -1,100 +1,46 @@
 package org.fog.test.perfeval;
 
+import java.io.IOException;
+import java.nio.file.*;
 import java.util.*;
 
 import org.cloudbus.cloudsim.core.CloudSim;
 import org.cloudbus.cloudsim.*;
-import org.cloudbus.cloudsim.power.PowerHost;
-import org.cloudbus.cloudsim.provisioners.RamProvisionerSimple;
-import org.cloudbus.cloudsim.sdn.overbooking.BwProvisionerOverbooking;
-import org.cloudbus.cloudsim.sdn.overbooking.PeProvisionerOverbooking;
 
 import org.fog.application.*;
 import org.fog.application.selectivity.FractionalSelectivity;
 import org.fog.entities.*;
 import org.fog.placement.*;
-import org.fog.policy.AppModuleAllocationPolicy;
-import org.fog.scheduler.StreamOperatorScheduler;
 import org.fog.utils.*;
-import org.fog.utils.distribution.DeterministicDistribution;
 
 public class SmartHealthSim {
 
-    // Lists to store the created Fog devices, sensors, and actuators
-    static List<FogDevice> fogDevices = new ArrayList<>();
-    static List<Sensor> sensors = new ArrayList<>();
-    static List<Actuator> actuators = new ArrayList<>();
+    // Modules of the monitored application loop, in tuple order
+    static final List<String> LOOP_MODULES = Arrays.asList("SensorReader", "Predictor", "DataStorage", "DisplayModule");
+
+    // The run being simulated; kept in a static field, so checkpoints capture it with CloudSim's own state
+    static SimulationSession session;
 
     public static void main(String[] args) {
-        Log.printLine("Starting Smart Health Fog Simulation...");
+        SimulationConfig config = SimulationConfig.fromArgs(args);
 
         try {
-            Logger.ENABLED = true;
-
-            int numUser = 1;
-            Calendar calendar = Calendar.getInstance();
-            boolean traceFlag = false;
-
-            // Initializes the CloudSim toolkit
-            CloudSim.init(numUser, calendar, traceFlag);
-
-            String appId = "smart_health";
-            FogBroker broker = new FogBroker("broker");
-
-            Application application = createApplication(appId, broker.getId());
-            application.setUserId(broker.getId());
-
-            createFogDevices(broker.getId(), appId);
-
-            // Finds the mobile device from the list of created Fog devices
-            FogDevice mobileDevice = fogDevices.stream().filter(d -> d.getName().equals("mobile")).findFirst().orElseThrow();
-
-            // Main sensor
-            Sensor ppgSensor = new Sensor("PPG_Sensor", "PPG_STREAM", broker.getId(), appId, new DeterministicDistribution(1));
-            Actuator displayActuator = new Actuator("actuator", broker.getId(), appId, "DISPLAY_RESULT");
-
-            // Creates a list of additional sensors
-            List<Sensor> additionalSensors = Arrays.asList(
-                new Sensor("HeartRate_Sensor", "HEART_RATE_STREAM", broker.getId(), appId, new DeterministicDistribution(1)),
-                new Sensor("SystolicPeak_Sensor", "SYSTOLIC_PEAK_STREAM", broker.getId(), appId, new DeterministicDistribution(1)),
-                new Sensor("DiastolicPeak_Sensor", "DIASTOLIC_PEAK_STREAM", broker.getId(), appId, new DeterministicDistribution(1)),
-                new Sensor("PulseArea_Sensor", "PULSE_AREA_STREAM", broker.getId(), appId, new DeterministicDistribution(1)),
-                new Sensor("WeightGender_Sensor", "WEIGHT_GENDER_STREAM", broker.getId(), appId, new DeterministicDistribution(1))
-            );
-
-            // Sets properties for the PPG sensor and adds it to the list
-            ppgSensor.setGatewayDeviceId(mobileDevice.getId());
-            ppgSensor.setLatency(1.0);
-            ppgSensor.setApp(application);
-            sensors.add(ppgSensor);
-
-            // Sets properties for the additional sensors and adds them to the list
-            for (Sensor s : additionalSensors) {
-                s.setGatewayDeviceId(mobileDevice.getId());
-                s.setLatency(1.0);
-                s.setApp(application);
-                sensors.add(s);
+            if (config.partitions > 0) {
+                Log.printLine("Starting Smart Health Fog Simulation in " + config.partitions + " partitions (Predictor on "
+                        + config.placement + ")...");
+                PartitionedSimulation.run(config);
+                Log.printLine("Smart Health Fog Simulation finished!");
+                return;
+            }
+            if (config.resumeFrom != null) {
+                Log.printLine("Resuming Smart Health Fog Simulation from " + config.resumeFrom + "...");
+                resume(Paths.get(config.resumeFrom), SimulationConfig.parseArgs(args));
+            } else {
+                Log.printLine("Starting Smart Health Fog Simulation (Predictor on " + config.placement + ")...");
+                setUp(config);
             }
 
-            // Sets properties for the display actuator and adds it to the list
-            displayActuator.setGatewayDeviceId(mobileDevice.getId());
-            displayActuator.setLatency(1.0);
-            displayActuator.setApp(application);
-            actuators.add(displayActuator);
-
-            // Defines the module placement mapping
-            ModuleMapping moduleMapping = ModuleMapping.createModuleMapping();
-            moduleMapping.addModuleToDevice("SensorReader", "mobile");
-            moduleMapping.addModuleToDevice("Predictor", "edge");
-            moduleMapping.addModuleToDevice("DataStorage", "cloud");
-            moduleMapping.addModuleToDevice("DisplayModule", "cloud");
-            moduleMapping.addModuleToDevice("DisplayActuatorModule", "mobile");
-
-            // Creates the controller and submits the application with the defined module placement
-            Controller controller = new Controller("master-controller", fogDevices, sensors, actuators);
-            controller.submitApplication(application, 0, new ModulePlacementMapping(fogDevices, application, moduleMapping));
-
-            // Starts the simulation
+            // Starts the simulation, or continues a restored one
             CloudSim.startSimulation();
             CloudSim.stopSimulation(); // Stops the simulation
             Log.printLine("Smart Health Fog Simulation finished!");
@@ -105,88 +51,320 @@ public class SmartHealthSim {
         }
     }
 
-    private static void createFogDevices(int userId, String appId) {
-        // Creates the cloud device
-        FogDevice cloud = createFogDevice("cloud", 44800, 40000, 100, 10000, 0, 0.01, 1650, 1332);
-        cloud.setParentId(-1);
-        cloud.setUplinkLatency(0);
-
-        // Creates the edge device
-        FogDevice edge = createFogDevice("edge", 2800, 4000, 100, 10000, 1, 0.0, 107.339, 83.4333);
-        edge.setParentId(cloud.getId());
-        edge.setUplinkLatency(100);
-
-        // Creates the mobile device
-        FogDevice mobile = createFogDevice("mobile", 1200, 1000, 100, 270, 2, 2.5, 87.53, 82.44);
-        mobile.setParentId(edge.getId());
-        mobile.setUplinkLatency(50);
-
-        // Adds all created devices to the list
-        fogDevices.add(cloud);
-        fogDevices.add(edge);
-        fogDevices.add(mobile);
+    // Initializes CloudSim and creates the application, topology and controller of one run, ready to start
+    static SmartHealthController setUp(SimulationConfig config) throws Exception {
+        return setUp(config, 0, config.edges, true);
     }
 
-    private static FogDevice createFogDevice(String nodeName, long mips, int ram, long upBw, long downBw,
-                                             int level, double ratePerMips, double busyPower, double idlePower) {
-        // Creates a list of processing elements
-        List<Pe> peList = new ArrayList<>();
-        peList.add(new Pe(0, new PeProvisionerOverbooking(mips)));
-
-        int hostId = FogUtils.generateEntityId();
-        long storage = 1000000;
-        int bw = 10000;
-
-        // Creates a PowerHost to represent the physical host of the Fog device
-        PowerHost host = new PowerHost(hostId,
-                new RamProvisionerSimple(ram),
-                new BwProvisionerOverbooking(bw),
-                storage, peList,
-                new StreamOperatorScheduler(peList),
-                new FogLinearPowerModel(busyPower, idlePower));
-
-        // Adds the host to a list
-        List<Host> hostList = new ArrayList<>();
-        hostList.add(host);
-
-        // Defines the characteristics of the Fog device
-        FogDeviceCharacteristics characteristics = new FogDeviceCharacteristics(
-                "x86", "Linux", "Xen", host, 10.0, 3.0, 0.05, 0.001, 0.0);
-
-        FogDevice device = null;
-        try {
-            device = new FogDevice(nodeName, characteristics,
-                    new AppModuleAllocationPolicy(hostList), new LinkedList<>(), 10, upBw, downBw, 0, ratePerMips);
-        } catch (Exception e) {
-            e.printStackTrace();
+    // Same for one partition of a partitioned run: the cloud and the edges firstEdge to lastEdge - 1, with their
+    // gateways and patients only if subtrees is set
+    static SmartHealthController setUp(SimulationConfig config, int firstEdge, int lastEdge, boolean subtrees) throws Exception {
+        check(config);
+        Logger.ENABLED = config.verbose;
+        Config.MAX_SIMULATION_TIME = config.duration;
+        SimulationMetrics.reset();
+        PatientTuples.clear();
+
+        int numUser = 1;
+        Calendar calendar = Calendar.getInstance();
+        boolean traceFlag = false;
+
+        // Initializes the CloudSim toolkit
+        CloudSim.init(numUser, calendar, traceFlag);
+
+        String appId = "smart_health";
+        FogBroker broker = new FogBroker("broker");
+        SimulationSession run = new SimulationSession();
+        run.config = config;
+
+        // Derives the Predictor's CPU demand per PREDICTION_TASK from the model; a calibration profile measured on
+        // edge hardware defines the AppEdge, one measured on cloud hardware overrides it on the cloud
+        ModelDescriptor model = ModelDescriptor.load(config.modelFile);
+        InferenceCostModel edgeCost = config.edgeProfile == null ? new AnalyticCostModel() : CalibratedCostModel.load(config.edgeProfile);
+        run.predictionCpu = edgeCost.cpuPerTuple(model, SmartHealthTopology.EDGE_MIPS);
+
+        int patients = config.edges * config.gatewaysPerEdge * config.patientsPerGateway;
+
+        // With a time-series store behind DataStorage, its measured append and display-query costs replace the
+        // DataStorage CPU and the DISPLAY_RESULT size
+        double storageCpu = 1000;
+        double displayBytes = 50;
+        if (config.storageDir != null) {
+            Path storageDir = Paths.get(config.storageDir);
+            if (TimeSeriesStore.exists(storageDir)) {
+                throw new IllegalArgumentException("--storageDir already holds a store: " + storageDir);
+            }
+            run.storageCost = config.storageProfile != null
+                    ? StorageCostModel.load(Paths.get(config.storageProfile), config) : StorageCostModel.measure(config);
+            storageCpu = run.storageCost.cpuPerTuple(config.storageReferenceMips);
+            displayBytes = run.storageCost.displayBytes(config.displayPoints);
+            run.store = new TimeSeriesStore(storageDir, PatientVitals.FEATURES.length, config.storageBlockPoints, 64L << 20);
+        }
+
+        // Sensor tuples and PREDICTION_TASKs take the size their readings and feature records have in the configured
+        // wire format, measured on the synthetic vitals or the trace
+        TraceFile trace = config.traceFile == null ? null
+                : new TraceFile(Paths.get(config.traceFile), config.traceTimeColumn, config.traceTimeScale, config.sensorInterval);
+        run.payload = PayloadSizeModel.measure(config.encoding, config.encodingBatch, Math.min(patients, 100),
+                config.sensorInterval, config.vitalsVolatility, trace);
+
+        Application application = createApplication(appId, broker.getId(), config, run.predictionCpu, edgeCost.ramMb(model),
+                storageCpu, displayBytes, run.payload);
+        application.setUserId(broker.getId());
+        run.application = application;
+        if (run.store != null) {
+            ((SmartHealthApplication) application).setStore(run.store);
         }
 
-        device.setLevel(level);
-        return device;
+        // Builds cloud, edges, mobile gateways and the sensors/actuator of every patient
+        SmartHealthTopology topology = SmartHealthTopology.create(broker.getId(), appId, application, config, firstEdge, lastEdge, subtrees);
+        run.topology = topology;
+        run.cloudPredictionCpu = run.predictionCpu;
+        if (config.cloudProfile != null) {
+            run.cloudPredictionCpu = CalibratedCostModel.load(config.cloudProfile).cpuPerTuple(model, SmartHealthTopology.CLOUD_MIPS);
+            topology.cloud.setModuleCpu("Predictor", run.cloudPredictionCpu);
+        }
+
+        // Creates the controller that collects the results of the run
+        run.controller = new SmartHealthController("master-controller", topology.fogDevices,
+                topology.sensors, topology.actuators, config.resultFile);
+
+        // Gives every edge its own Predictor result cache
+        if (config.predictorCache) {
+            for (SmartHealthFogDevice edge : topology.edges) {
+                edge.setPredictionCache(new PredictionCache(config.cacheSize, config.cacheTtl, config.cacheTolerance), config.cacheHitCpu);
+            }
+        }
+
+        // Puts priority scheduling and admission control in front of every edge's Predictor
+        TuplePriority.setRoutineStreams(Arrays.asList(config.routineStreams.split(",")));
+        if (!config.admission.equals("none")) {
+            for (SmartHealthFogDevice edge : topology.edges) {
+                edge.setAdmissionController(new AdmissionController("Predictor", config.admission, config.admissionConcurrency,
+                        config.admissionQueueDepth, config.admissionUtilization, config.admissionWindow));
+            }
+        }
+
+        if (config.metricsDir != null) {
+            Path metricsDir = Paths.get(config.metricsDir);
+            Files.createDirectories(metricsDir);
+            SimulationMetrics.getInstance().openUtilizationLog(metricsDir.resolve("utilization.csv"));
+            new UtilizationSampler("utilization-sampler", topology.fogDevices, config.utilizationInterval);
+        }
+
+        // Powers edges up and down with the load, re-homing their gateways
+        if (config.autoscale) {
+            run.autoscaler = new EdgeAutoscaler("edge-autoscaler", topology, config);
+        }
+
+        // Publishes samples of the running simulation, so a sweep can stop runs that went bad
+        if (config.progressInterval > 0) {
+            run.progress = new ProgressMonitor("progress-monitor", topology.fogDevices, config);
+        }
+
+        if (config.checkpointInterval > 0) {
+            new CheckpointWriter("checkpoint-writer", config);
+        }
+
+        // Submits the application with an adaptive or a fixed module placement
+        ModulePlacement placement = createModulePlacement(topology, application, config);
+        if (placement instanceof AdaptiveModulePlacement) {
+            run.placement = (AdaptiveModulePlacement) placement;
+        }
+        session = run;
+        registerMetrics(run);
+        run.controller.submitApplication(application, 0, placement);
+        return run.controller;
+    }
+
+    // Only adaptive placement ever moves the Predictor to the cloud, so offloading needs it
+    private static void check(SimulationConfig config) {
+        if (config.admission.equals(AdmissionController.OFFLOAD) && !config.placement.equals("adaptive")) {
+            throw new IllegalArgumentException("--admission=offload needs --placement=adaptive");
+        }
+    }
+
+    // Restores a checkpoint written by CheckpointWriter, applies the options a branch may change and registers the
+    // metrics again; CloudSim.startSimulation then continues from the checkpoint's simulated time
+    static SmartHealthController resume(Path checkpoint, Map<String, String> options) throws IOException {
+        int objects = Snapshot.read(checkpoint);
+        SimulationSession run = session;
+        options.forEach((name, value) -> {
+            if (!name.equals("resumeFrom")) {
+                run.branch(name, value);
+            }
+        });
+        Logger.ENABLED = run.config.verbose;
+        registerMetrics(run);
+        Log.printLine("Restored " + objects + " objects at simulated time " + CloudSim.clock());
+        return run.controller;
+    }
+
+    // Registers the extra metrics and stop actions of a run on its controller
+    static void registerMetrics(SimulationSession run) {
+        SmartHealthController controller = run.controller;
+        SmartHealthTopology topology = run.topology;
+        SimulationConfig config = run.config;
+
+        double predictionCpu = run.predictionCpu;
+        double edgeInference = run.predictionCpu / SmartHealthTopology.EDGE_MIPS;
+        double cloudInference = run.cloudPredictionCpu / SmartHealthTopology.CLOUD_MIPS;
+        controller.addMetric("predictionCpu", () -> predictionCpu);
+        controller.addMetric("edgeInferenceLatency", () -> edgeInference);
+        controller.addMetric("cloudInferenceLatency", () -> cloudInference);
+        if (run.store != null) {
+            TimeSeriesStore timeSeries = run.store;
+            StorageCostModel measured = run.storageCost;
+            controller.addMetric("storageAppendMicros", () -> measured.appendSeconds * 1e6);
+            controller.addMetric("storageQueryMicros", () -> measured.querySeconds * 1e6);
+            controller.addMetric("storageBytesPerPoint", () -> measured.bytesPerPoint);
+            controller.addMetric("storedPoints", () -> timeSeries.points);
+            controller.addStopAction(() -> {
+                try {
+                    timeSeries.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+        }
+        PayloadSizeModel payload = run.payload;
+        controller.addMetric("sensorPayloadBytes", () -> payload.streamBytes.values().stream().mapToDouble(Double::doubleValue)
+                .average().orElse(0));
+        controller.addMetric("predictionPayloadBytes", () -> payload.recordBytes);
+        if (run.application instanceof FusingApplication) {
+            FusingApplication fusion = (FusingApplication) run.application;
+            controller.addMetric("sensorReadings", () -> fusion.readings);
+            controller.addMetric("fusedReadings", () -> fusion.fusedReadings);
+            controller.addMetric("predictionTasks", () -> fusion.fusedTasks);
+            controller.addMetric("fusionWait", fusion::getAverageWait);
+        }
+
+        if (config.predictorCache) {
+            controller.addMetric("cacheHits", () -> topology.edges.stream().mapToLong(e -> e.getPredictionCache().hits).sum());
+            controller.addMetric("cacheMisses", () -> topology.edges.stream().mapToLong(e -> e.getPredictionCache().misses).sum());
+            controller.addMetric("cacheHitRatio", () -> {
+                long hits = topology.edges.stream().mapToLong(e -> e.getPredictionCache().hits).sum();
+                long misses = topology.edges.stream().mapToLong(e -> e.getPredictionCache().misses).sum();
+                return hits + misses == 0 ? 0.0 : (double) hits / (hits + misses);
+            });
+            controller.addMetric("cacheSavedMI", () -> topology.edges.stream().mapToDouble(e -> e.savedMi).sum());
+        }
+
+        if (!config.admission.equals("none")) {
+            controller.addMetric("shedTuples", () -> topology.edges.stream().mapToLong(e -> e.getAdmissionController().shed).sum());
+            controller.addMetric("offloadedTuples", () -> topology.edges.stream().mapToLong(e -> e.getAdmissionController().offloaded).sum());
+        }
+
+        // Reports loop latency percentiles and, if requested, exports the detailed metrics
+        LatencyHistogram loopLatency = SimulationMetrics.getInstance().loopLatency;
+        controller.addMetric("loopP50", () -> loopLatency.getValueAtPercentile(50));
+        controller.addMetric("loopP95", () -> loopLatency.getValueAtPercentile(95));
+        controller.addMetric("loopP99", () -> loopLatency.getValueAtPercentile(99));
+        controller.addMetric("loopMax", loopLatency::getMax);
+        controller.addMetric("deviceEvents", () -> SimulationMetrics.getInstance().deviceEvents);
+        LatencyHistogram[] byPriority = SimulationMetrics.getInstance().loopLatencyByPriority;
+        controller.addMetric("loopCriticalP99", () -> byPriority[TuplePriority.CRITICAL].getValueAtPercentile(99));
+        controller.addMetric("loopCriticalMax", byPriority[TuplePriority.CRITICAL]::getMax);
+        controller.addMetric("loopRoutineP99", () -> byPriority[TuplePriority.ROUTINE].getValueAtPercentile(99));
+        if (config.metricsDir != null) {
+            Path metricsDir = Paths.get(config.metricsDir);
+            controller.addStopAction(() -> {
+                try {
+                    SimulationMetrics.getInstance().export(metricsDir);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+        }
+
+        if (run.autoscaler != null) {
+            EdgeAutoscaler autoscaler = run.autoscaler;
+            controller.addMetric("scaleUps", () -> autoscaler.scaleUps);
+            controller.addMetric("scaleDowns", () -> autoscaler.scaleDowns);
+            controller.addMetric("sloViolations", () -> autoscaler.sloViolations);
+            controller.addMetric("averagePoweredEdges", autoscaler::getAveragePoweredEdges);
+            controller.addMetric("poweredEdgeHours", autoscaler::getPoweredEdgeHours);
+            controller.addMetric("edgeFleetCost", () -> autoscaler.getPoweredEdgeHours() * config.edgeHourlyCost);
+            controller.addMetric("edgeEnergy", () -> topology.edges.stream().mapToDouble(FogDevice::getEnergyConsumption).sum());
+        }
+
+        if (run.progress != null) {
+            controller.addStopAction(run.progress::finish);
+        }
+
+        if (run.placement != null) {
+            AdaptiveModulePlacement placement = run.placement;
+            controller.addMetric("predictorMigrations", () -> placement.migrations);
+            controller.addMetric("predictorOffloadedEdges", placement::countOffloaded);
+        }
+    }
+
+    private static ModulePlacement createModulePlacement(SmartHealthTopology topology, Application application,
+                                                         SimulationConfig config) {
+        // Sensors and the actuator are attached to the mobile gateways, so these modules always run there
+        Map<String, String> pinnedModules = new LinkedHashMap<>();
+        pinnedModules.put("SensorReader", SmartHealthTopology.MOBILE);
+        pinnedModules.put("DisplayActuatorModule", SmartHealthTopology.MOBILE);
+
+        if (config.placement.equals("adaptive")) {
+            AdaptiveModulePlacement placement = new AdaptiveModulePlacement(topology, application, LOOP_MODULES,
+                    pinnedModules, moduleRatesPerGateway(config), "Predictor", config.saturation);
+            new PlacementMonitor("placement-monitor", placement, config.reevaluationInterval);
+            return placement;
+        }
+
+        // Fixed placement with the Predictor on the configured tier
+        Map<String, String> moduleToTier = new LinkedHashMap<>(pinnedModules);
+        moduleToTier.put("Predictor", config.placement);
+        moduleToTier.put("DataStorage", SmartHealthTopology.CLOUD);
+        moduleToTier.put("DisplayModule", SmartHealthTopology.CLOUD);
+        return new TierModulePlacement(topology, application, moduleToTier);
+    }
+
+    // Expected tuples per time unit each loop module receives from one gateway
+    private static Map<String, Double> moduleRatesPerGateway(SimulationConfig config) {
+        double readingRate = SmartHealthTopology.SENSOR_STREAMS.length * config.patientsPerGateway / config.sensorInterval;
+        double taskRate = readingRate;
+        if (config.fusion.equals(FusingApplication.COUNT)) {
+            taskRate = readingRate / config.fusionBatchSize;
+        } else if (config.fusion.equals(FusingApplication.WINDOW)) {
+            taskRate = Math.min(readingRate, config.patientsPerGateway / config.fusionWindow);
+        }
+
+        Map<String, Double> rates = new HashMap<>();
+        for (String module : LOOP_MODULES) {
+            rates.put(module, module.equals("SensorReader") ? readingRate : taskRate);
+        }
+        return rates;
     }
 
-    private static Application createApplication(String appId, int userId) {
-        Application application = Application.createApplication(appId, userId);
+    static Application createApplication(String appId, int userId, SimulationConfig config, double predictionCpu,
+                                         int predictorRam, double storageCpu, double displayBytes,
+                                         PayloadSizeModel payload) {
+        // Without fusion every sensor reading becomes its own PREDICTION_TASK
+        Application application = config.fusion.equals("none")
+                ? new SmartHealthApplication(appId, userId)
+                : new FusingApplication(appId, userId, config.fusion, config.fusionBatchSize, config.fusionWindow);
 
         // Adds application modules with their MIPS demand
         application.addAppModule("SensorReader", 100);
-        application.addAppModule("Predictor", 100);
+        application.addAppModule("Predictor", predictorRam);
         application.addAppModule("DataStorage", 100);
         application.addAppModule("DisplayModule", 100);
         application.addAppModule("DisplayActuatorModule", 100);
 
         // Adds application edges that define the data flow and characteristics between sensors and modules
-        application.addAppEdge("PPG_Sensor", "SensorReader", 1000, 200, 5, "PPG_STREAM", Tuple.UP, AppEdge.SENSOR);
-        application.addAppEdge("HeartRate_Sensor", "SensorReader", 1000, 200, 5, "HEART_RATE_STREAM", Tuple.UP, AppEdge.SENSOR);
-        application.addAppEdge("SystolicPeak_Sensor", "SensorReader", 1000, 200, 5, "SYSTOLIC_PEAK_STREAM", Tuple.UP, AppEdge.SENSOR);
-        application.addAppEdge("DiastolicPeak_Sensor", "SensorReader", 1000, 200, 5, "DIASTOLIC_PEAK_STREAM", Tuple.UP, AppEdge.SENSOR);
-        application.addAppEdge("PulseArea_Sensor", "SensorReader", 1000, 200, 5, "PULSE_AREA_STREAM", Tuple.UP, AppEdge.SENSOR);
-        application.addAppEdge("WeightGender_Sensor", "SensorReader", 1000, 200, 5, "WEIGHT_GENDER_STREAM", Tuple.UP, AppEdge.SENSOR);
+        application.addAppEdge("PPG_Sensor", "SensorReader", 1000, payload.streamBytes.get("PPG_STREAM"), 5, "PPG_STREAM", Tuple.UP, AppEdge.SENSOR);
+        application.addAppEdge("HeartRate_Sensor", "SensorReader", 1000, payload.streamBytes.get("HEART_RATE_STREAM"), 5, "HEART_RATE_STREAM", Tuple.UP, AppEdge.SENSOR);
+        application.addAppEdge("SystolicPeak_Sensor", "SensorReader", 1000, payload.streamBytes.get("SYSTOLIC_PEAK_STREAM"), 5, "SYSTOLIC_PEAK_STREAM", Tuple.UP, AppEdge.SENSOR);
+        application.addAppEdge("DiastolicPeak_Sensor", "SensorReader", 1000, payload.streamBytes.get("DIASTOLIC_PEAK_STREAM"), 5, "DIASTOLIC_PEAK_STREAM", Tuple.UP, AppEdge.SENSOR);
+        application.addAppEdge("PulseArea_Sensor", "SensorReader", 1000, payload.streamBytes.get("PULSE_AREA_STREAM"), 5, "PULSE_AREA_STREAM", Tuple.UP, AppEdge.SENSOR);
+        application.addAppEdge("WeightGender_Sensor", "SensorReader", 1000, payload.streamBytes.get("WEIGHT_GENDER_STREAM"), 5, "WEIGHT_GENDER_STREAM", Tuple.UP, AppEdge.SENSOR);
 
         // Adds edges between modules
-        application.addAppEdge("SensorReader", "Predictor", 2000, 500, "PREDICTION_TASK", Tuple.UP, AppEdge.MODULE);
-        application.addAppEdge("Predictor", "DataStorage", 1000, 100, "PREDICTION_RESULT", Tuple.UP, AppEdge.MODULE);
-        application.addAppEdge("DataStorage", "DisplayModule", 500, 50, "DISPLAY_RESULT", Tuple.UP, AppEdge.MODULE);
+        application.addAppEdge("SensorReader", "Predictor", predictionCpu, payload.recordBytes, "PREDICTION_TASK", Tuple.UP, AppEdge.MODULE);
+        application.addAppEdge("Predictor", "DataStorage", storageCpu, 100, "PREDICTION_RESULT", Tuple.UP, AppEdge.MODULE);
+        application.addAppEdge("DataStorage", "DisplayModule", 500, displayBytes, "DISPLAY_RESULT", Tuple.UP, AppEdge.MODULE);
         application.addAppEdge("DisplayModule", "DisplayActuatorModule", 100, 20, "DISPLAY_RESULT_FINAL", Tuple.UP, AppEdge.MODULE);
         application.addAppEdge("DisplayActuatorModule", "actuator", 10, 5, "ACTUATOR_TRIGGER", Tuple.DOWN, AppEdge.ACTUATOR);
 
@@ -204,9 +382,7 @@ public class SmartHealthSim {
         application.addTupleMapping("DisplayActuatorModule", "DISPLAY_RESULT_FINAL", "ACTUATOR_TRIGGER", new FractionalSelectivity(1.0));
 
         // Defines the application loops for monitoring latency and dependencies
-        application.setLoops(Collections.singletonList(new AppLoop(Arrays.asList(
-                "SensorReader", "Predictor", "DataStorage", "DisplayModule"
-        ))));
+        application.setLoops(Collections.singletonList(new AppLoop(LOOP_MODULES)));
 
         return application;
     }
@@ -0,0 +1,329 @@
+package org.fog.test.perfeval;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class SmartHealthSweep {
+
+    // CloudSim keeps its state in static fields and the iFogSim controller calls System.exit when it stops,
+    // so every point of the grid runs SmartHealthSim in its own JVM
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = SimulationConfig.parseArgs(args);
+        List<SimulationConfig> grid = createGrid(options);
+        int parallelism = Integer.parseInt(options.getOrDefault("parallelism",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        Path outDir = Paths.get(options.getOrDefault("outDir", "sweep-results"));
+        boolean storage = Boolean.parseBoolean(options.getOrDefault("storage", "false"));
+        Watchdog watchdog = new Watchdog(Double.parseDouble(options.getOrDefault("killLoopP99", "0")),
+                Long.parseLong(options.getOrDefault("killQueuedTuples", "0")),
+                Integer.parseInt(options.getOrDefault("killAfter", "3")));
+        double progressInterval = Double.parseDouble(options.getOrDefault("progressInterval", "1000"));
+        Files.createDirectories(outDir);
+
+        // Storage costs are measured once, before any run competes for the CPU, so every grid point gets the same
+        // DataStorage CPU and DISPLAY_RESULT size
+        if (storage && grid.get(0).storageProfile == null) {
+            Path profile = outDir.resolve("storage-profile.properties");
+            StorageCostModel.measure(grid.get(0)).save(profile);
+            for (SimulationConfig config : grid) {
+                config.storageProfile = profile.toString();
+            }
+            System.out.println("Storage costs measured once, written to " + profile);
+        }
+
+        System.out.println("Running " + grid.size() + " configurations on " + parallelism + " processes...");
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        List<Future<Properties>> results = new ArrayList<>();
+        for (int i = 0; i < grid.size(); i++) {
+            int runId = i;
+            SimulationConfig config = grid.get(i);
+            if (storage) {
+                config.storageDir = outDir.resolve("run-" + runId + "-store").toString();
+            }
+            if (watchdog.enabled()) {
+                config.progressInterval = progressInterval;
+                config.progressFile = outDir.resolve("run-" + runId + ".progress").toString();
+            }
+            results.add(executor.submit(() -> runSimulation(runId, config, outDir, watchdog)));
+        }
+        executor.shutdown();
+
+        List<Properties> metrics = new ArrayList<>();
+        for (Future<Properties> result : results) {
+            metrics.add(result.get());
+        }
+
+        // Runs report different extra metrics depending on their options, so the columns are their union
+        Set<String> columns = new LinkedHashSet<>(Arrays.asList(METRICS));
+        for (Properties run : metrics) {
+            run.stringPropertyNames().stream().sorted().forEach(columns::add);
+        }
+
+        // Rows are written in grid order, whatever order the processes finish in
+        Path summary = outDir.resolve("sweep.csv");
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(summary))) {
+            out.println("run," + SimulationConfig.csvHeader() + "," + String.join(",", columns));
+            for (int i = 0; i < metrics.size(); i++) {
+                StringBuilder row = new StringBuilder(i + "," + grid.get(i).toCsv());
+                for (String column : columns) {
+                    row.append(',').append(metrics.get(i).getProperty(column, ""));
+                }
+                out.println(row);
+            }
+        }
+        System.out.println("Sweep finished, results written to " + summary);
+    }
+
+    // Metrics every run reports, always written first
+    private static final String[] METRICS = {"loopDelay", "energy", "cloudCost", "networkUsage"};
+
+    // Sweep options (comma-separated lists) and the simulation option each one sets
+    private static final String[][] DIMENSIONS = {
+            {"placements", "placement"},
+            {"edgeUplinkLatencies", "edgeUplinkLatency"},
+            {"mobileUplinkLatencies", "mobileUplinkLatency"},
+            {"mobileMips", "mobileMips"},
+            {"edges", "edges"},
+            {"gatewaysPerEdge", "gatewaysPerEdge"},
+            {"patientsPerGateway", "patientsPerGateway"},
+            {"sensorIntervals", "sensorInterval"},
+            {"encodings", "encoding"},
+            {"encodingBatches", "encodingBatch"},
+            {"fusionModes", "fusion"},
+            {"fusionBatchSizes", "fusionBatchSize"},
+            {"fusionWindows", "fusionWindow"},
+            {"predictorCache", "predictorCache"},
+            {"cacheTolerances", "cacheTolerance"},
+            {"admissionModes", "admission"},
+            {"partitions", "partitions"},
+            {"autoscale", "autoscale"},
+            {"latencySlos", "latencySlo"}
+    };
+
+    // Options of the sweep itself rather than of its runs
+    private static final Set<String> SWEEP_OPTIONS = new HashSet<>(Arrays.asList("parallelism", "outDir", "storage",
+            "killLoopP99", "killQueuedTuples", "killAfter", "progressInterval"));
+
+    // Builds the cartesian product of all option lists. Every other simulation option is applied to every run, and
+    // options that are not given keep their default value; a name that is neither a dimension, a simulation option
+    // nor a sweep option is rejected instead of running the default grid.
+    static List<SimulationConfig> createGrid(Map<String, String> options) {
+        Set<String> dimensions = new HashSet<>();
+        for (String[] dimension : DIMENSIONS) {
+            dimensions.add(dimension[0]);
+        }
+        Map<String, String> common = new LinkedHashMap<>();
+        SimulationConfig check = new SimulationConfig();
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            if (dimensions.contains(option.getKey()) || SWEEP_OPTIONS.contains(option.getKey())) {
+                continue;
+            }
+            try {
+                check.set(option.getKey(), option.getValue());
+            } catch (NumberFormatException e) {
+                throw e;
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown sweep option: --" + option.getKey()
+                        + " is neither a sweep dimension, a simulation option nor a sweep option", e);
+            }
+            common.put(option.getKey(), option.getValue());
+        }
+
+        List<Map<String, String>> points = new ArrayList<>();
+        points.add(new LinkedHashMap<>());
+        for (String[] dimension : DIMENSIONS) {
+            if (!options.containsKey(dimension[0])) {
+                continue;
+            }
+            List<Map<String, String>> expanded = new ArrayList<>();
+            for (Map<String, String> point : points) {
+                for (String value : options.get(dimension[0]).split(",")) {
+                    Map<String, String> next = new LinkedHashMap<>(point);
+                    next.put(dimension[1], value.trim());
+                    expanded.add(next);
+                }
+            }
+            points = expanded;
+        }
+
+        List<SimulationConfig> grid = new ArrayList<>();
+        for (Map<String, String> point : points) {
+            SimulationConfig config = new SimulationConfig();
+            config.verbose = false;
+            common.forEach(config::set);
+            point.forEach(config::set);
+            grid.add(config);
+        }
+        return grid;
+    }
+
+    // Starts one simulation process and returns the metrics it wrote, or when the watchdog stopped it early, the
+    // simulated time and the reason
+    private static Properties runSimulation(int runId, SimulationConfig config, Path outDir, Watchdog watchdog) throws Exception {
+        Path resultFile = outDir.resolve("run-" + runId + ".properties");
+        config.resultFile = resultFile.toString();
+
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(SmartHealthSim.class.getName());
+        command.addAll(config.toArgs());
+
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(outDir.resolve("run-" + runId + ".log").toFile())
+                .start();
+        Watchdog.Run watched = watchdog.watch(config.progressFile);
+        while (!process.waitFor(1, TimeUnit.SECONDS)) {
+            String reason = watched.check();
+            if (reason != null) {
+                process.destroyForcibly().waitFor();
+                System.out.println("Run " + runId + " killed at simulated time " + watched.time + ": " + reason
+                        + " (" + config.toCsv() + ")");
+                Properties killed = new Properties();
+                killed.setProperty("killedAt", String.valueOf(watched.time));
+                killed.setProperty("killReason", reason);
+                return killed;
+            }
+        }
+        int exitCode = process.exitValue();
+
+        if (!Files.exists(resultFile)) {
+            System.out.println("Run " + runId + " failed with exit code " + exitCode + " (" + config.toCsv() + ")");
+            return new Properties();
+        }
+
+        Properties metrics = new Properties();
+        try (Reader in = Files.newBufferedReader(resultFile)) {
+            metrics.load(in);
+        }
+        System.out.println("Run " + runId + " done (" + config.toCsv() + ")");
+        return metrics;
+    }
+
+    // Stops runs from their progress samples once the rolling loop p99 or the tuples queued on all devices stay
+    // above their limit (0 for none) for killAfter samples in a row. Every sample written since the previous poll
+    // is checked, so the count does not depend on how often the file is polled.
+    private static class Watchdog {
+
+        private static final Pattern TIME = Pattern.compile("\"time\": ([-0-9.Ee]+)");
+        private static final Pattern LOOP_P99 = Pattern.compile("\"loopP99\": ([-0-9.Ee]+)");
+        private static final Pattern QUEUED = Pattern.compile("\"queuedTuples\": ([0-9]+)");
+
+        // Bytes read from the progress file at a time
+        private static final int CHUNK_BYTES = 64 << 10;
+
+        private final double loopP99;
+        private final long queuedTuples;
+        private final int samples;
+
+        Watchdog(double loopP99, long queuedTuples, int samples) {
+            this.loopP99 = loopP99;
+            this.queuedTuples = queuedTuples;
+            this.samples = samples;
+        }
+
+        boolean enabled() {
+            return loopP99 > 0 || queuedTuples > 0;
+        }
+
+        Run watch(String progressFile) {
+            return new Run(progressFile == null || !enabled() ? null : Paths.get(progressFile));
+        }
+
+        private class Run {
+            private final Path file;
+            double time = -1;
+            private int breaches = 0;
+
+            // Bytes of the progress file read so far, the file they were read from and a line not complete yet
+            private long offset = 0;
+            private Object fileKey;
+            private final ByteArrayOutputStream partial = new ByteArrayOutputStream();
+            private final byte[] chunk = new byte[CHUNK_BYTES];
+
+            Run(Path file) {
+                this.file = file;
+            }
+
+            // Reads every sample written since the previous check and returns why the run should be stopped, or null
+            String check() throws IOException {
+                if (file == null || !Files.exists(file)) {
+                    return null;
+                }
+                // A full progress file is renamed to <file>.1 and a new one started, so the rest of the old one is
+                // read from there first
+                Object key = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+                if (Files.size(file) < offset || key != null && fileKey != null && !key.equals(fileKey)) {
+                    String reason = read(file.resolveSibling(file.getFileName() + ".1"));
+                    offset = 0;
+                    partial.reset();
+                    if (reason != null) {
+                        return reason;
+                    }
+                }
+                fileKey = key;
+                return read(file);
+            }
+
+            // Checks the complete lines from offset to the end of the file, one sample each
+            private String read(Path path) throws IOException {
+                if (!Files.exists(path)) {
+                    return null;
+                }
+                try (RandomAccessFile in = new RandomAccessFile(path.toFile(), "r")) {
+                    in.seek(offset);
+                    int n;
+                    while ((n = in.read(chunk)) > 0) {
+                        int start = 0;
+                        for (int i = 0; i < n; i++) {
+                            if (chunk[i] != '\n') {
+                                continue;
+                            }
+                            partial.write(chunk, start, i - start);
+                            offset += i + 1 - start;
+                            start = i + 1;
+                            String reason = sample(new String(partial.toByteArray(), StandardCharsets.UTF_8));
+                            partial.reset();
+                            if (reason != null) {
+                                return reason;
+                            }
+                        }
+                        partial.write(chunk, start, n - start);
+                        offset += n - start;
+                    }
+                }
+                return null;
+            }
+
+            // Counts a sample above a limit as a breach and returns the reason once killAfter samples in a row are
+            private String sample(String sample) {
+                Matcher timeMatch = TIME.matcher(sample);
+                if (!timeMatch.find()) {
+                    return null;
+                }
+                time = Double.parseDouble(timeMatch.group(1));
+
+                String reason = null;
+                Matcher p99 = LOOP_P99.matcher(sample);
+                if (loopP99 > 0 && p99.find() && Double.parseDouble(p99.group(1)) > loopP99) {
+                    reason = "loop p99 " + p99.group(1) + " above " + loopP99;
+                }
+                Matcher queued = QUEUED.matcher(sample);
+                if (queuedTuples > 0 && queued.find() && Long.parseLong(queued.group(1)) > queuedTuples) {
+                    reason = queued.group(1) + " queued tuples above " + queuedTuples;
+                }
+                breaches = reason == null ? 0 : breaches + 1;
+                return breaches >= samples ? reason : null;
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package org.fog.test.perfeval;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.*;
+
+import org.cloudbus.cloudsim.*;
+import org.cloudbus.cloudsim.power.PowerHost;
+import org.cloudbus.cloudsim.provisioners.RamProvisionerSimple;
+import org.cloudbus.cloudsim.sdn.overbooking.BwProvisionerOverbooking;
+import org.cloudbus.cloudsim.sdn.overbooking.PeProvisionerOverbooking;
+
+import org.fog.application.Application;
+import org.fog.entities.*;
+import org.fog.policy.AppModuleAllocationPolicy;
+import org.fog.scheduler.StreamOperatorScheduler;
+import org.fog.utils.*;
+import org.fog.utils.distribution.DeterministicDistribution;
+import org.fog.utils.distribution.Distribution;
+
+public class SmartHealthTopology {
+
+    // Tier names used by the module placement
+    static final String CLOUD = "cloud";
+    static final String EDGE = "edge";
+    static final String MOBILE = "mobile";
+
+    // Processing capacity of the cloud and of every edge
+    static final long CLOUD_MIPS = 44800;
+    static final long EDGE_MIPS = 2800;
+
+    // Sensor names and the tuple types they emit, one set per patient
+    static final String[][] SENSOR_STREAMS = {
+            {"PPG_Sensor", "PPG_STREAM"},
+            {"HeartRate_Sensor", "HEART_RATE_STREAM"},
+            {"SystolicPeak_Sensor", "SYSTOLIC_PEAK_STREAM"},
+            {"DiastolicPeak_Sensor", "DIASTOLIC_PEAK_STREAM"},
+            {"PulseArea_Sensor", "PULSE_AREA_STREAM"},
+            {"WeightGender_Sensor", "WEIGHT_GENDER_STREAM"}
+    };
+
+    // All entities handed to the controller
+    final List<FogDevice> fogDevices = new ArrayList<>();
+    final List<Sensor> sensors = new ArrayList<>();
+    final List<Actuator> actuators = new ArrayList<>();
+
+    // Devices grouped by tier, so lookups never scan the whole topology
+    SmartHealthFogDevice cloud;
+    final List<SmartHealthFogDevice> edges = new ArrayList<>();
+    final List<SmartHealthFogDevice> gateways = new ArrayList<>();
+    private final Map<String, SmartHealthFogDevice> devicesByName = new HashMap<>();
+    private final Map<Integer, SmartHealthFogDevice> devicesById = new HashMap<>();
+    private final Map<Integer, List<SmartHealthFogDevice>> childrenById = new HashMap<>();
+
+    // Number of the first patient created here, 0 unless the topology starts at a later edge
+    private int firstPatient = 0;
+
+    // Builds one cloud with K edges, N gateways (mobiles) per edge and M patients per gateway.
+    // Every step only appends, so time and memory grow linearly with the number of patients.
+    static SmartHealthTopology create(int userId, String appId, Application application, SimulationConfig config)
+            throws IOException {
+        return create(userId, appId, application, config, 0, config.edges, true);
+    }
+
+    // Builds the cloud and the edges firstEdge to lastEdge - 1 of the full topology, with their gateways and patients
+    // only if subtrees is set. Devices and patients keep the names and numbers they have in the full topology, so
+    // every patient replays the same trace slice and vitals in a partition of a partitioned run.
+    static SmartHealthTopology create(int userId, String appId, Application application, SimulationConfig config,
+                                      int firstEdge, int lastEdge, boolean subtrees) throws IOException {
+        SmartHealthTopology topology = new SmartHealthTopology();
+        topology.firstPatient = firstEdge * config.gatewaysPerEdge * config.patientsPerGateway;
+
+        // Sensors replay a recorded trace instead of emitting at a fixed interval if one is given
+        TraceFile trace = config.traceFile == null ? null
+                : new TraceFile(Paths.get(config.traceFile), config.traceTimeColumn, config.traceTimeScale, config.sensorInterval);
+        int patients = config.edges * config.gatewaysPerEdge * config.patientsPerGateway;
+
+        // Creates the cloud device
+        SmartHealthFogDevice cloud = createFogDevice("cloud", CLOUD_MIPS, 40000, 100, 10000, 0, 0.01, 1650, 1332);
+        cloud.setParentId(-1);
+        cloud.setUplinkLatency(0);
+        topology.cloud = cloud;
+        topology.add(cloud);
+
+        for (int e = firstEdge; e < lastEdge; e++) {
+            // Creates an edge device below the cloud
+            SmartHealthFogDevice edge = createFogDevice(edgeName(e), EDGE_MIPS, 4000, 100, 10000, 1, 0.0, 107.339, 83.4333);
+            edge.setParentId(cloud.getId());
+            edge.setUplinkLatency(config.edgeUplinkLatency);
+            topology.edges.add(edge);
+            topology.add(edge);
+
+            for (int g = 0; subtrees && g < config.gatewaysPerEdge; g++) {
+                // Creates a mobile gateway below the edge
+                SmartHealthFogDevice mobile = createFogDevice("mobile-" + e + "-" + g, config.mobileMips, 1000, 100, 270, 2, 2.5, 87.53, 82.44);
+                mobile.setParentId(edge.getId());
+                mobile.setUplinkLatency(config.mobileUplinkLatency);
+                topology.gateways.add(mobile);
+                topology.add(mobile);
+
+                for (int p = 0; p < config.patientsPerGateway; p++) {
+                    topology.addPatient(mobile, userId, appId, application, config, trace, patients);
+                }
+            }
+        }
+        return topology;
+    }
+
+    // Attaches the six sensor streams and the display actuator of one patient to a gateway; with a trace all six
+    // replay the same slice of it, one slice per patient
+    private void addPatient(FogDevice gateway, int userId, String appId, Application application, SimulationConfig config,
+                            TraceFile trace, int patients) {
+        int patient = firstPatient + actuators.size();
+
+        // Feature values are only tracked when the Predictor cache, the store or sensor fusion needs them
+        PatientVitals vitals = config.predictorCache || config.storageDir != null || !config.fusion.equals("none")
+                ? new PatientVitals(patient, config.vitalsVolatility) : null;
+        for (String[] stream : SENSOR_STREAMS) {
+            Distribution interval = new DeterministicDistribution(config.sensorInterval);
+            if (config.diurnalPeriod > 0) {
+                interval = new DiurnalDistribution(interval, config.diurnalPeriod, config.diurnalAmplitude);
+            }
+            Sensor sensor = trace == null
+                    ? new PatientSensor(stream[0], stream[1], userId, appId, interval, vitals)
+                    : new TraceSensor(stream[0], stream[1], userId, appId,
+                            new TraceDistribution(trace, patient, patients, vitals != null), vitals,
+                            config.encoding.equals(PayloadSizeModel.JSON));
+            sensor.setGatewayDeviceId(gateway.getId());
+            sensor.setLatency(1.0);
+            sensor.setApp(application);
+            sensors.add(sensor);
+        }
+
+        Actuator displayActuator = new Actuator("actuator", userId, appId, "DISPLAY_RESULT");
+        displayActuator.setGatewayDeviceId(gateway.getId());
+        displayActuator.setLatency(1.0);
+        displayActuator.setApp(application);
+        actuators.add(displayActuator);
+    }
+
+    // Moves a gateway, with the sensors and actuators attached to it, below another edge
+    void rehome(SmartHealthFogDevice gateway, SmartHealthFogDevice edge) {
+        SmartHealthFogDevice previous = devicesById.get(gateway.getParentId());
+        previous.getChildrenIds().remove(Integer.valueOf(gateway.getId()));
+        previous.getChildToLatencyMap().remove(gateway.getId());
+        childrenById.get(previous.getId()).remove(gateway);
+
+        gateway.setParentId(edge.getId());
+        edge.getChildrenIds().add(gateway.getId());
+        edge.getChildToLatencyMap().put(gateway.getId(), gateway.getUplinkLatency());
+        childrenById.computeIfAbsent(edge.getId(), id -> new ArrayList<>()).add(gateway);
+    }
+
+    static String edgeName(int index) {
+        return "edge-" + index;
+    }
+
+    private void add(SmartHealthFogDevice device) {
+        fogDevices.add(device);
+        devicesByName.put(device.getName(), device);
+        devicesById.put(device.getId(), device);
+        if (device.getParentId() != -1) {
+            childrenById.computeIfAbsent(device.getParentId(), id -> new ArrayList<>()).add(device);
+        }
+    }
+
+    SmartHealthFogDevice getDevice(String name) {
+        return devicesByName.get(name);
+    }
+
+    SmartHealthFogDevice getDevice(int id) {
+        return devicesById.get(id);
+    }
+
+    List<SmartHealthFogDevice> getChildren(FogDevice device) {
+        return childrenById.getOrDefault(device.getId(), Collections.emptyList());
+    }
+
+    // Returns every device of a tier ("cloud", "edge" or "mobile")
+    List<SmartHealthFogDevice> getTier(String tier) {
+        switch (tier) {
+            case CLOUD: return Collections.singletonList(cloud);
+            case EDGE: return edges;
+            case MOBILE: return gateways;
+            default: throw new IllegalArgumentException("Unknown tier: " + tier);
+        }
+    }
+
+    static SmartHealthFogDevice createFogDevice(String nodeName, long mips, int ram, long upBw, long downBw,
+                                                int level, double ratePerMips, double busyPower, double idlePower) {
+        // Creates a list of processing elements
+        List<Pe> peList = new ArrayList<>();
+        peList.add(new Pe(0, new PeProvisionerOverbooking(mips)));
+
+        int hostId = FogUtils.generateEntityId();
+        long storage = 1000000;
+        int bw = 10000;
+
+        // Creates a PowerHost to represent the physical host of the Fog device
+        PowerHost host = new PowerHost(hostId,
+                new RamProvisionerSimple(ram),
+                new BwProvisionerOverbooking(bw),
+                storage, peList,
+                new StreamOperatorScheduler(peList),
+                new SleepPowerModel(busyPower, idlePower));
+
+        // Adds the host to a list
+        List<Host> hostList = new ArrayList<>();
+        hostList.add(host);
+
+        // Defines the characteristics of the Fog device
+        FogDeviceCharacteristics characteristics = new FogDeviceCharacteristics(
+                "x86", "Linux", "Xen", host, 10.0, 3.0, 0.05, 0.001, 0.0);
+
+        SmartHealthFogDevice device = null;
+        try {
+            device = new SmartHealthFogDevice(nodeName, characteristics,
+                    new AppModuleAllocationPolicy(hostList), new LinkedList<>(), 10, upBw, downBw, 0, ratePerMips);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        device.setLevel(level);
+        return device;
+    }
+}
@@ -0,0 +1,1103 @@
+package org.fog.test.perfeval;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.text.DecimalFormat;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class Snapshot {
+
+    // Implemented by objects holding state a snapshot cannot capture, such as mapped files and open writers, in
+    // transient fields; restore is called once the whole graph is back and re-creates it from the other fields
+    interface Restorable {
+        void restore() throws IOException;
+    }
+
+    private static final int MAGIC = 0x53485350;
+    private static final int VERSION = 1;
+
+    // CloudSim keeps its clock, entities and event queues in static fields, iFogSim its monitors and id counters,
+    // and this simulation its session and registries, so the static fields of these packages are the roots
+    private static final String[] ROOT_PACKAGES = {"org.cloudbus.cloudsim.", "org.fog."};
+    private static final String[] EXCLUDED_PACKAGES = {"org.fog.gui."};
+
+    // Record kinds; references are record numbers starting at 1, 0 is null
+    private static final byte END = 0;
+    private static final byte OBJECT = 1;
+    private static final byte STRING = 2;
+    private static final byte BOXED = 3;
+    private static final byte ENUM = 4;
+    private static final byte CLASS = 5;
+    private static final byte PATH = 6;
+    private static final byte DECIMAL_FORMAT = 7;
+    private static final byte SERIALIZED = 8;
+    private static final byte PRIMITIVE_ARRAY = 9;
+    private static final byte OBJECT_ARRAY = 10;
+    private static final byte COLLECTION = 11;
+    private static final byte SORTED_COLLECTION = 12;
+    private static final byte MAP = 13;
+    private static final byte SORTED_MAP = 14;
+    private static final byte LIST_COPY = 15;
+    private static final byte SET_COPY = 16;
+    private static final byte MAP_COPY = 17;
+
+    // JDK collections re-created through their no-argument constructor and filled through their public methods.
+    // The access order of a LinkedHashMap is private, so such maps come back in insertion order.
+    private static final Set<Class<?>> COLLECTIONS = new HashSet<>(Arrays.asList(ArrayList.class, LinkedList.class,
+            ArrayDeque.class, Vector.class, CopyOnWriteArrayList.class, HashSet.class, LinkedHashSet.class));
+    private static final Set<Class<?>> MAPS = new HashSet<>(Arrays.asList(HashMap.class, LinkedHashMap.class,
+            Hashtable.class, ConcurrentHashMap.class, IdentityHashMap.class));
+
+    private static final Map<String, Class<?>> PRIMITIVES = new HashMap<>();
+    static {
+        for (Class<?> type : new Class<?>[]{boolean.class, byte.class, char.class, short.class, int.class, long.class,
+                float.class, double.class, void.class}) {
+            PRIMITIVES.put(type.getName(), type);
+        }
+    }
+
+    // Classes of the root packages, found on the class path once; Snapshot's own fields are not roots
+    private static List<Class<?>> rootClasses;
+
+    // Writes every object reachable from the static fields of the root packages to the file and returns how many
+    // there were. CheckpointWriter calls this from inside its CHECKPOINT event. That is safe because CloudSim has
+    // already taken the event out of its queues and the next CHECKPOINT waits in future. The rest of the tick's
+    // events wait in deferred, and the entities that ran earlier in the tick have consumed theirs, so a resumed run
+    // continues with exactly the rest of the tick. Any other caller must not keep simulation state in locals across
+    // the call, as those are not captured.
+    static int write(Path file) throws IOException {
+        // Snapshots are mostly record numbers and repeated field values, which even the fastest level compresses well
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(
+                Files.newOutputStream(file), 1 << 16) {
+            {
+                def.setLevel(Deflater.BEST_SPEED);
+            }
+        }, 1 << 16))) {
+            Writer writer = new Writer(out);
+            writer.write(rootClasses());
+            if (!writer.skipped.isEmpty()) {
+                System.err.println("Snapshot left out fields it cannot capture: " + writer.skipped);
+            }
+            return writer.ids.size();
+        }
+    }
+
+    // Restores the static fields written by write, and everything reachable from them, into this JVM
+    static int read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(
+                Files.newInputStream(file), 1 << 16), 1 << 16))) {
+            return new Reader(in).read();
+        }
+    }
+
+    // Classes of the root packages on the class path, from directories and jars; the class path does not change
+    // during a run, so it is only scanned for the first checkpoint
+    private static synchronized List<Class<?>> rootClasses() throws IOException {
+        if (rootClasses != null) {
+            return rootClasses;
+        }
+        Set<String> names = new TreeSet<>();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            Path path = Paths.get(entry);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> files = Files.walk(path)) {
+                    files.filter(f -> f.toString().endsWith(".class"))
+                            .forEach(f -> names.add(className(path.relativize(f).toString().replace(File.separatorChar, '/'))));
+                }
+            } else if (entry.endsWith(".jar") && Files.exists(path)) {
+                try (JarFile jar = new JarFile(path.toFile())) {
+                    for (JarEntry jarEntry : Collections.list(jar.entries())) {
+                        if (jarEntry.getName().endsWith(".class")) {
+                            names.add(className(jarEntry.getName()));
+                        }
+                    }
+                }
+            }
+        }
+
+        List<Class<?>> classes = new ArrayList<>();
+        for (String name : names) {
+            if (isRoot(name)) {
+                try {
+                    classes.add(Class.forName(name, false, Snapshot.class.getClassLoader()));
+                } catch (Throwable e) {
+                    // Classes that cannot be loaded here, e.g. for a missing optional dependency, hold no state
+                }
+            }
+        }
+        rootClasses = classes;
+        return classes;
+    }
+
+    private static String className(String file) {
+        return file.substring(0, file.length() - ".class".length()).replace('/', '.');
+    }
+
+    private static boolean isRoot(String name) {
+        if (name.startsWith(Snapshot.class.getName())) {
+            return false;
+        }
+        for (String excluded : EXCLUDED_PACKAGES) {
+            if (name.startsWith(excluded)) {
+                return false;
+            }
+        }
+        for (String root : ROOT_PACKAGES) {
+            if (name.startsWith(root)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isJdk(Class<?> type) {
+        ClassLoader loader = type.getClassLoader();
+        return loader == null || loader == ClassLoader.getPlatformClassLoader();
+    }
+
+    private static boolean isImmutable(Object value) {
+        byte kind = kindOf(value);
+        return kind == STRING || kind == BOXED || kind == ENUM || kind == CLASS || kind == PATH;
+    }
+
+    private static final ClassValue<Byte> KINDS = new ClassValue<Byte>() {
+        @Override
+        protected Byte computeValue(Class<?> type) {
+            return kindOf(type);
+        }
+    };
+
+    private static byte kindOf(Object value) {
+        return KINDS.get(value.getClass());
+    }
+
+    // Record kind of a class, or -1 if it cannot be captured: lambdas, JDK objects that are neither handled here
+    // nor serializable (streams, threads, mapped buffers) and classes extending such JDK classes
+    private static byte kindOf(Class<?> type) {
+        if (type == String.class) {
+            return STRING;
+        }
+        if (Number.class.isAssignableFrom(type) && isJdk(type) && type.getName().startsWith("java.lang.")
+                || type == Boolean.class || type == Character.class) {
+            return BOXED;
+        }
+        if (Enum.class.isAssignableFrom(type)) {
+            return ENUM;
+        }
+        if (type == Class.class) {
+            return CLASS;
+        }
+        if (Path.class.isAssignableFrom(type)) {
+            return PATH;
+        }
+        if (type.isArray()) {
+            return type.getComponentType().isPrimitive() ? PRIMITIVE_ARRAY : OBJECT_ARRAY;
+        }
+        if (type.getName().contains("$$Lambda")) {
+            return -1;
+        }
+        if (!isJdk(type)) {
+            for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+                if (isJdk(c)) {
+                    return -1;
+                }
+            }
+            return OBJECT;
+        }
+        if (type == Object.class) {
+            return OBJECT;
+        }
+        if (type == DecimalFormat.class) {
+            return DECIMAL_FORMAT;
+        }
+        if (COLLECTIONS.contains(type)) {
+            return COLLECTION;
+        }
+        if (type == TreeSet.class || type == PriorityQueue.class) {
+            return SORTED_COLLECTION;
+        }
+        if (MAPS.contains(type)) {
+            return MAP;
+        }
+        if (type == TreeMap.class) {
+            return SORTED_MAP;
+        }
+        // Wrappers and fixed-size views such as Collections.unmodifiableList or Arrays.asList come back as copies
+        String name = type.getName();
+        if (name.startsWith("java.util.Collections$") || name.startsWith("java.util.Arrays$")
+                || name.startsWith("java.util.ImmutableCollections$")) {
+            if (List.class.isAssignableFrom(type)) {
+                return LIST_COPY;
+            }
+            if (Set.class.isAssignableFrom(type)) {
+                return SET_COPY;
+            }
+            if (Map.class.isAssignableFrom(type)) {
+                return MAP_COPY;
+            }
+        }
+        return Serializable.class.isAssignableFrom(type) ? SERIALIZED : -1;
+    }
+
+    // Instance fields of a class and its superclasses that are part of its state
+    private static Field[] fieldsOf(Class<?> type) {
+        List<Field> fields = new ArrayList<>();
+        for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isTransient(field.getModifiers())) {
+                    field.setAccessible(true);
+                    fields.add(field);
+                }
+            }
+        }
+        return fields.toArray(new Field[0]);
+    }
+
+    private static char typeCode(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return 'L';
+        }
+        return type == boolean.class ? 'Z' : type == long.class ? 'J' : type.getName().toUpperCase().charAt(0);
+    }
+
+    private static Class<?> classForName(String name) throws IOException {
+        Class<?> primitive = PRIMITIVES.get(name);
+        if (primitive != null) {
+            return primitive;
+        }
+        try {
+            return Class.forName(name, false, Snapshot.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new InvalidClassException(name, "class of the snapshot not found");
+        }
+    }
+
+    private static final class Writer {
+
+        private final DataOutputStream out;
+        private final ObjectIds ids = new ObjectIds();
+        private final ArrayDeque<Object> pending = new ArrayDeque<>();
+        private final Map<Class<?>, Integer> classIds = new HashMap<>();
+        private final Map<Class<?>, Field[]> layouts = new HashMap<>();
+
+        // Serializable JDK objects (Random, Calendar, atomics...) share one stream, so their class descriptors are
+        // written once; it follows the records and is read in the same order
+        private final ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        private final ObjectOutputStream serializedOut;
+
+        // Fields that held something that cannot be captured and are restored as null
+        final Set<String> skipped = new TreeSet<>();
+
+        Writer(DataOutputStream out) throws IOException {
+            this.out = out;
+            serializedOut = new ObjectOutputStream(serialized) {
+                {
+                    enableReplaceObject(true);
+                }
+
+                @Override
+                protected Object replaceObject(Object obj) throws IOException {
+                    if (!isJdk(obj.getClass())) {
+                        throw new NotSerializableException(obj.getClass().getName() + " inside a serialized JDK object");
+                    }
+                    return obj;
+                }
+            };
+        }
+
+        void write(List<Class<?>> classes) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            // Constants are left to the class initializers; final fields holding mutable objects are restored in place
+            List<Field> statics = new ArrayList<>();
+            List<Object> values = new ArrayList<>();
+            for (Class<?> type : classes) {
+                Field[] fields;
+                try {
+                    fields = type.getDeclaredFields();
+                } catch (Throwable e) {
+                    continue;
+                }
+                for (Field field : fields) {
+                    int modifiers = field.getModifiers();
+                    boolean isFinal = Modifier.isFinal(modifiers);
+                    if (!Modifier.isStatic(modifiers) || isFinal && field.getType().isPrimitive()) {
+                        continue;
+                    }
+                    Object value;
+                    try {
+                        field.setAccessible(true);
+                        value = field.get(null);
+                    } catch (Throwable e) {
+                        continue;
+                    }
+                    if (!field.getType().isPrimitive() && (value == null ? isFinal : isFinal && isImmutable(value) || kindOf(value) < 0)) {
+                        continue;
+                    }
+                    statics.add(field);
+                    values.add(value);
+                }
+            }
+
+            out.writeInt(statics.size());
+            for (int i = 0; i < statics.size(); i++) {
+                Field field = statics.get(i);
+                writeString(field.getDeclaringClass().getName());
+                writeString(field.getName());
+                char code = typeCode(field.getType());
+                out.writeChar(code);
+                writeValue(code, values.get(i), field.toString());
+            }
+
+            while (!pending.isEmpty()) {
+                writeRecord(pending.poll());
+            }
+            out.writeByte(END);
+            serializedOut.close();
+            out.writeInt(serialized.size());
+            serialized.writeTo(out);
+        }
+
+        private int ref(Object value, String owner) {
+            if (value == null) {
+                return 0;
+            }
+            int id = ids.get(value);
+            if (id == 0) {
+                if (kindOf(value) < 0) {
+                    skipped.add(owner + " (" + value.getClass().getName() + ")");
+                    return 0;
+                }
+                id = ids.add(value);
+                pending.add(value);
+            }
+            return id;
+        }
+
+        private void writeValue(char code, Object value, String owner) throws IOException {
+            switch (code) {
+                case 'Z': out.writeBoolean((Boolean) value); break;
+                case 'B': out.writeByte((Byte) value); break;
+                case 'C': out.writeChar((Character) value); break;
+                case 'S': out.writeShort((Short) value); break;
+                case 'I': out.writeInt((Integer) value); break;
+                case 'J': out.writeLong((Long) value); break;
+                case 'F': out.writeFloat((Float) value); break;
+                case 'D': out.writeDouble((Double) value); break;
+                default: out.writeInt(ref(value, owner)); break;
+            }
+        }
+
+        private void writeRecord(Object value) throws IOException {
+            byte kind = kindOf(value);
+            out.writeByte(kind);
+            switch (kind) {
+                case OBJECT:
+                    writeObject(value);
+                    break;
+                case STRING:
+                    writeString((String) value);
+                    break;
+                case BOXED:
+                    char code = typeCode(value.getClass() == Boolean.class ? boolean.class
+                            : value.getClass() == Character.class ? char.class : primitiveOf(value.getClass()));
+                    out.writeChar(code);
+                    writeValue(code, value, null);
+                    break;
+                case ENUM:
+                    writeClass(((Enum<?>) value).getDeclaringClass());
+                    writeString(((Enum<?>) value).name());
+                    break;
+                case CLASS:
+                    writeString(((Class<?>) value).getName());
+                    break;
+                case PATH:
+                    writeString(value.toString());
+                    break;
+                case DECIMAL_FORMAT:
+                    writeString(((DecimalFormat) value).toPattern());
+                    break;
+                case SERIALIZED:
+                    serializedOut.writeObject(value);
+                    break;
+                case PRIMITIVE_ARRAY:
+                    writePrimitiveArray(value);
+                    break;
+                case OBJECT_ARRAY:
+                    Object[] array = (Object[]) value;
+                    writeClass(array.getClass().getComponentType());
+                    out.writeInt(array.length);
+                    for (Object element : array) {
+                        out.writeInt(ref(element, array.getClass().getSimpleName()));
+                    }
+                    break;
+                case COLLECTION:
+                    writeClass(value.getClass());
+                    writeElements((Collection<?>) value);
+                    break;
+                case SORTED_COLLECTION:
+                    writeClass(value.getClass());
+                    Comparator<?> comparator = value instanceof TreeSet ? ((TreeSet<?>) value).comparator()
+                            : ((PriorityQueue<?>) value).comparator();
+                    out.writeInt(ref(comparator, value.getClass().getSimpleName() + " comparator"));
+                    writeElements((Collection<?>) value);
+                    break;
+                case MAP:
+                    writeClass(value.getClass());
+                    writeEntries((Map<?, ?>) value);
+                    break;
+                case SORTED_MAP:
+                    out.writeInt(ref(((TreeMap<?, ?>) value).comparator(), "TreeMap comparator"));
+                    writeEntries((Map<?, ?>) value);
+                    break;
+                case LIST_COPY:
+                case SET_COPY:
+                    out.writeBoolean(value.getClass().getName().contains("Unmodifiable"));
+                    writeElements((Collection<?>) value);
+                    break;
+                case MAP_COPY:
+                    out.writeBoolean(value.getClass().getName().contains("Unmodifiable"));
+                    writeEntries((Map<?, ?>) value);
+                    break;
+                default:
+                    throw new IllegalStateException("Unexpected record kind " + kind);
+            }
+        }
+
+        private void writeObject(Object value) throws IOException {
+            Class<?> type = value.getClass();
+            writeClass(type);
+            Field[] fields = layouts.get(type);
+            if (fields == null) {
+                fields = fieldsOf(type);
+                layouts.put(type, fields);
+                out.writeInt(fields.length);
+                for (Field field : fields) {
+                    writeString(field.getDeclaringClass().getName());
+                    writeString(field.getName());
+                    out.writeChar(typeCode(field.getType()));
+                }
+            }
+            for (Field field : fields) {
+                Object fieldValue;
+                try {
+                    fieldValue = field.get(value);
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(e);
+                }
+                writeValue(typeCode(field.getType()), fieldValue, field.getDeclaringClass().getName() + "." + field.getName());
+            }
+        }
+
+        private void writePrimitiveArray(Object array) throws IOException {
+            char code = typeCode(array.getClass().getComponentType());
+            int length = Array.getLength(array);
+            out.writeChar(code);
+            out.writeInt(length);
+            switch (code) {
+                case 'B':
+                    out.write((byte[]) array);
+                    break;
+                case 'I':
+                    for (int v : (int[]) array) {
+                        out.writeInt(v);
+                    }
+                    break;
+                case 'J':
+                    for (long v : (long[]) array) {
+                        out.writeLong(v);
+                    }
+                    break;
+                case 'D':
+                    for (double v : (double[]) array) {
+                        out.writeDouble(v);
+                    }
+                    break;
+                default:
+                    for (int i = 0; i < length; i++) {
+                        writeValue(code, Array.get(array, i), null);
+                    }
+                    break;
+            }
+        }
+
+        private void writeElements(Collection<?> collection) throws IOException {
+            Object[] elements = collection.toArray();
+            out.writeInt(elements.length);
+            for (Object element : elements) {
+                out.writeInt(ref(element, collection.getClass().getSimpleName() + " element"));
+            }
+        }
+
+        private void writeEntries(Map<?, ?> map) throws IOException {
+            List<Map.Entry<?, ?>> entries = new ArrayList<>(map.entrySet());
+            out.writeInt(entries.size());
+            for (Map.Entry<?, ?> entry : entries) {
+                out.writeInt(ref(entry.getKey(), map.getClass().getSimpleName() + " key"));
+                out.writeInt(ref(entry.getValue(), map.getClass().getSimpleName() + " value"));
+            }
+        }
+
+        private void writeClass(Class<?> type) throws IOException {
+            Integer id = classIds.get(type);
+            if (id == null) {
+                classIds.put(type, classIds.size());
+                out.writeInt(-1);
+                writeString(type.getName());
+            } else {
+                out.writeInt(id);
+            }
+        }
+
+        private void writeString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private static Class<?> primitiveOf(Class<?> box) {
+            try {
+                return (Class<?>) box.getField("TYPE").get(null);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    // Restored objects are allocated without running any of their constructors, as Java deserialization does, since
+    // CloudSim and iFogSim classes have no no-arg constructors. Only the JDK's sun.reflect.ReflectionFactory can do
+    // that; it is looked up reflectively because javac warns about every direct use of it and the warning cannot be
+    // suppressed, which would also show up in every module compiling these sources.
+    private static final class SerializationConstructors {
+
+        private static final Object FACTORY;
+        private static final Method NEW_CONSTRUCTOR;
+
+        static {
+            try {
+                Class<?> factoryClass = Class.forName("sun.reflect.ReflectionFactory");
+                FACTORY = factoryClass.getMethod("getReflectionFactory").invoke(null);
+                NEW_CONSTRUCTOR = factoryClass.getMethod("newConstructorForSerialization", Class.class, Constructor.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        // A constructor creating an instance of type that runs no constructor but Object's
+        static Constructor<?> of(Class<?> type) throws ReflectiveOperationException {
+            return (Constructor<?>) NEW_CONSTRUCTOR.invoke(FACTORY, type, Object.class.getDeclaredConstructor());
+        }
+    }
+
+    private static final class Reader {
+
+        private final DataInputStream in;
+        private final List<Class<?>> classes = new ArrayList<>();
+        private final Map<Class<?>, Layout> layouts = new HashMap<>();
+        private final Map<Class<?>, Constructor<?>> constructors = new HashMap<>();
+
+        // Restored objects and, until they are filled in, what they hold, both indexed by reference
+        private final List<Object> objects = new ArrayList<>();
+        private final List<Object> records = new ArrayList<>();
+        private final BitSet bound = new BitSet();
+
+        Reader(DataInputStream in) {
+            this.in = in;
+            objects.add(null);
+            records.add(null);
+        }
+
+        int read() throws IOException {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a snapshot of this version");
+            }
+
+            int staticCount = in.readInt();
+            Field[] statics = new Field[staticCount];
+            Object[] staticValues = new Object[staticCount];
+            for (int i = 0; i < staticCount; i++) {
+                Class<?> owner = classForName(readString());
+                String name = readString();
+                char code = in.readChar();
+                try {
+                    statics[i] = owner.getDeclaredField(name);
+                    statics[i].setAccessible(true);
+                } catch (NoSuchFieldException e) {
+                    throw new InvalidClassException(owner.getName(), "static field " + name + " of the snapshot not found");
+                }
+                staticValues[i] = readValue(code);
+            }
+
+            for (byte kind = in.readByte(); kind != END; kind = in.readByte()) {
+                readRecord(kind);
+            }
+            byte[] serialized = new byte[in.readInt()];
+            in.readFully(serialized);
+
+            // Objects held by final static fields stay the ones their class created and are refilled in place
+            try {
+                for (int i = 0; i < staticCount; i++) {
+                    if (Modifier.isFinal(statics[i].getModifiers()) && staticValues[i] instanceof Ref) {
+                        bind(((Ref) staticValues[i]).id, statics[i].get(null));
+                    }
+                }
+                create(serialized);
+                fill();
+                for (int i = 0; i < staticCount; i++) {
+                    if (!Modifier.isFinal(statics[i].getModifiers())) {
+                        statics[i].set(null, resolve(staticValues[i]));
+                    }
+                }
+            } catch (ReflectiveOperationException e) {
+                throw new IOException("Cannot restore snapshot", e);
+            }
+
+            for (Object object : objects) {
+                if (object instanceof Restorable) {
+                    ((Restorable) object).restore();
+                }
+            }
+            return objects.size() - 1;
+        }
+
+        private void bind(int id, Object live) {
+            Object record = records.get(id);
+            Object restored = objects.get(id);
+            boolean matches;
+            if (live == null || bound.get(id)) {
+                matches = false;
+            } else if (record instanceof ObjectRecord) {
+                matches = ((ObjectRecord) record).layout.type == live.getClass();
+            } else if (record instanceof ContainerRecord) {
+                matches = ((ContainerRecord) record).isMap() ? live instanceof Map : live instanceof Collection;
+            } else if (record instanceof int[]) {
+                matches = live instanceof Object[] && ((Object[]) live).length == ((int[]) record).length;
+            } else if (restored != null && restored.getClass().isArray() && restored.getClass() == live.getClass()
+                    && Array.getLength(restored) == Array.getLength(live)) {
+                System.arraycopy(restored, 0, live, 0, Array.getLength(live));
+                matches = true;
+            } else {
+                matches = false;
+            }
+            if (matches) {
+                objects.set(id, live);
+                bound.set(id);
+            }
+        }
+
+        // Creates every object; arrays and JDK immutables already exist, collections come last since a sorted one
+        // needs its comparator
+        private void create(byte[] serialized) throws ReflectiveOperationException, IOException {
+            try (ObjectInputStream serializedIn = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+                for (int id = 1; id < records.size(); id++) {
+                    Object record = records.get(id);
+                    if (record instanceof ObjectRecord && !bound.get(id)) {
+                        objects.set(id, allocate(((ObjectRecord) record).layout.type));
+                    } else if (record == Serialized.INSTANCE) {
+                        Object value = serializedIn.readObject();
+                        if (!bound.get(id)) {
+                            objects.set(id, value);
+                        }
+                    }
+                }
+            }
+            for (int id = 1; id < records.size(); id++) {
+                Object record = records.get(id);
+                if (record instanceof ContainerRecord && !bound.get(id)) {
+                    objects.set(id, ((ContainerRecord) record).create(this));
+                }
+            }
+        }
+
+        // Fills in fields and array elements, then the collections from the last to the first, so that elements
+        // are complete before a hash or sorted collection they belong to is built
+        private void fill() throws ReflectiveOperationException {
+            for (int id = 1; id < records.size(); id++) {
+                Object record = records.get(id);
+                if (record instanceof ObjectRecord) {
+                    ObjectRecord object = (ObjectRecord) record;
+                    for (int f = 0; f < object.layout.fields.length; f++) {
+                        object.layout.fields[f].set(objects.get(id), resolve(object.values[f]));
+                    }
+                } else if (record instanceof int[]) {
+                    Object[] array = (Object[]) objects.get(id);
+                    int[] elements = (int[]) record;
+                    for (int i = 0; i < elements.length && i < array.length; i++) {
+                        array[i] = objects.get(elements[i]);
+                    }
+                }
+            }
+            for (int id = records.size() - 1; id > 0; id--) {
+                Object record = records.get(id);
+                if (record instanceof ContainerRecord) {
+                    try {
+                        ((ContainerRecord) record).fill(this, objects.get(id), bound.get(id));
+                    } catch (UnsupportedOperationException e) {
+                        // An immutable collection of a final static field keeps what its class initializer put there
+                    }
+                }
+            }
+        }
+
+        private Object allocate(Class<?> type) throws ReflectiveOperationException {
+            Constructor<?> constructor = constructors.get(type);
+            if (constructor == null) {
+                constructor = SerializationConstructors.of(type);
+                constructors.put(type, constructor);
+            }
+            return constructor.newInstance();
+        }
+
+        private Object resolve(Object value) {
+            return value instanceof Ref ? objects.get(((Ref) value).id) : value;
+        }
+
+        private void readRecord(byte kind) throws IOException {
+            Object value = null;
+            Object record = null;
+            switch (kind) {
+                case OBJECT:
+                    Class<?> type = readClass();
+                    Layout layout = layouts.get(type);
+                    if (layout == null) {
+                        layout = readLayout(type);
+                        layouts.put(type, layout);
+                    }
+                    Object[] values = new Object[layout.codes.length];
+                    for (int f = 0; f < values.length; f++) {
+                        values[f] = readValue(layout.codes[f]);
+                    }
+                    record = new ObjectRecord(layout, values);
+                    break;
+                case STRING:
+                    value = readString();
+                    break;
+                case BOXED:
+                    value = readValue(in.readChar());
+                    break;
+                case ENUM:
+                    value = enumConstant(readClass(), readString());
+                    break;
+                case CLASS:
+                    value = classForName(readString());
+                    break;
+                case PATH:
+                    value = Paths.get(readString());
+                    break;
+                case DECIMAL_FORMAT:
+                    value = new DecimalFormat(readString());
+                    break;
+                case SERIALIZED:
+                    record = Serialized.INSTANCE;
+                    break;
+                case PRIMITIVE_ARRAY:
+                    value = readPrimitiveArray();
+                    break;
+                case OBJECT_ARRAY:
+                    Class<?> component = readClass();
+                    int[] elements = readRefs(in.readInt());
+                    value = Array.newInstance(component, elements.length);
+                    record = elements;
+                    break;
+                case COLLECTION:
+                case MAP:
+                    Class<?> containerType = readClass();
+                    record = new ContainerRecord(kind, containerType, 0, false, readRefs(in.readInt() * (kind == MAP ? 2 : 1)));
+                    break;
+                case SORTED_COLLECTION:
+                    Class<?> sortedType = readClass();
+                    int comparator = in.readInt();
+                    record = new ContainerRecord(kind, sortedType, comparator, false, readRefs(in.readInt()));
+                    break;
+                case SORTED_MAP:
+                    int mapComparator = in.readInt();
+                    record = new ContainerRecord(kind, TreeMap.class, mapComparator, false, readRefs(in.readInt() * 2));
+                    break;
+                case LIST_COPY:
+                case SET_COPY:
+                case MAP_COPY:
+                    boolean unmodifiable = in.readBoolean();
+                    record = new ContainerRecord(kind, null, 0, unmodifiable, readRefs(in.readInt() * (kind == MAP_COPY ? 2 : 1)));
+                    break;
+                default:
+                    throw new IOException("Corrupt snapshot: record kind " + kind);
+            }
+            objects.add(value);
+            records.add(record);
+        }
+
+        private Layout readLayout(Class<?> type) throws IOException {
+            int count = in.readInt();
+            Field[] fields = new Field[count];
+            char[] codes = new char[count];
+            for (int f = 0; f < count; f++) {
+                Class<?> owner = classForName(readString());
+                String name = readString();
+                codes[f] = in.readChar();
+                try {
+                    fields[f] = owner.getDeclaredField(name);
+                } catch (NoSuchFieldException e) {
+                    throw new InvalidClassException(owner.getName(), "field " + name + " of the snapshot not found");
+                }
+                if (typeCode(fields[f].getType()) != codes[f]) {
+                    throw new InvalidClassException(owner.getName(), "field " + name + " changed its type");
+                }
+                fields[f].setAccessible(true);
+            }
+            return new Layout(type, fields, codes);
+        }
+
+        private Object readValue(char code) throws IOException {
+            switch (code) {
+                case 'Z': return in.readBoolean();
+                case 'B': return in.readByte();
+                case 'C': return in.readChar();
+                case 'S': return in.readShort();
+                case 'I': return in.readInt();
+                case 'J': return in.readLong();
+                case 'F': return in.readFloat();
+                case 'D': return in.readDouble();
+                default: return new Ref(in.readInt());
+            }
+        }
+
+        private Object readPrimitiveArray() throws IOException {
+            char code = in.readChar();
+            int length = in.readInt();
+            switch (code) {
+                case 'B':
+                    byte[] bytes = new byte[length];
+                    in.readFully(bytes);
+                    return bytes;
+                case 'I':
+                    int[] ints = new int[length];
+                    for (int i = 0; i < length; i++) {
+                        ints[i] = in.readInt();
+                    }
+                    return ints;
+                case 'J':
+                    long[] longs = new long[length];
+                    for (int i = 0; i < length; i++) {
+                        longs[i] = in.readLong();
+                    }
+                    return longs;
+                case 'D':
+                    double[] doubles = new double[length];
+                    for (int i = 0; i < length; i++) {
+                        doubles[i] = in.readDouble();
+                    }
+                    return doubles;
+                default:
+                    Class<?> component = code == 'Z' ? boolean.class : code == 'C' ? char.class : code == 'S' ? short.class : float.class;
+                    Object array = Array.newInstance(component, length);
+                    for (int i = 0; i < length; i++) {
+                        Array.set(array, i, readValue(code));
+                    }
+                    return array;
+            }
+        }
+
+        private int[] readRefs(int count) throws IOException {
+            int[] refs = new int[count];
+            for (int i = 0; i < count; i++) {
+                refs[i] = in.readInt();
+            }
+            return refs;
+        }
+
+        private Class<?> readClass() throws IOException {
+            int id = in.readInt();
+            if (id >= 0) {
+                return classes.get(id);
+            }
+            Class<?> type = classForName(readString());
+            classes.add(type);
+            return type;
+        }
+
+        private String readString() throws IOException {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private static Object enumConstant(Class<?> type, String name) {
+            return Enum.valueOf((Class<? extends Enum>) type, name);
+        }
+    }
+
+    // Record numbers of the objects written so far by identity; open addressing over plain arrays, as a snapshot
+    // holds millions of objects and IdentityHashMap boxes every value
+    private static final class ObjectIds {
+        private Object[] keys = new Object[1 << 12];
+        private int[] values = new int[1 << 12];
+        private int size = 0;
+
+        int size() {
+            return size;
+        }
+
+        // Returns the record number of the object, 0 if it has none yet
+        int get(Object key) {
+            int mask = keys.length - 1;
+            for (int i = slot(key, mask); keys[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+            }
+            return 0;
+        }
+
+        // Gives a new object the next record number
+        int add(Object key) {
+            if (2 * (size + 1) > keys.length) {
+                resize();
+            }
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            while (keys[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = ++size;
+            return size;
+        }
+
+        private void resize() {
+            Object[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new Object[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] != null) {
+                    int i = slot(oldKeys[j], mask);
+                    while (keys[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[j];
+                    values[i] = oldValues[j];
+                }
+            }
+        }
+
+        private static int slot(Object key, int mask) {
+            int h = System.identityHashCode(key) * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+
+    private static final class Ref {
+        final int id;
+
+        Ref(int id) {
+            this.id = id;
+        }
+    }
+
+    private static final class Layout {
+        final Class<?> type;
+        final Field[] fields;
+        final char[] codes;
+
+        Layout(Class<?> type, Field[] fields, char[] codes) {
+            this.type = type;
+            this.fields = fields;
+            this.codes = codes;
+        }
+    }
+
+    private static final class ObjectRecord {
+        final Layout layout;
+        final Object[] values;
+
+        ObjectRecord(Layout layout, Object[] values) {
+            this.layout = layout;
+            this.values = values;
+        }
+    }
+
+    private enum Serialized { INSTANCE }
+
+    private static final class ContainerRecord {
+        final byte kind;
+        final Class<?> type;
+        final int comparator;
+        final boolean unmodifiable;
+        final int[] refs;
+
+        // The modifiable collection behind an unmodifiable copy
+        Object backing;
+
+        ContainerRecord(byte kind, Class<?> type, int comparator, boolean unmodifiable, int[] refs) {
+            this.kind = kind;
+            this.type = type;
+            this.comparator = comparator;
+            this.unmodifiable = unmodifiable;
+            this.refs = refs;
+        }
+
+        boolean isMap() {
+            return kind == MAP || kind == SORTED_MAP || kind == MAP_COPY;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Object create(Reader reader) throws ReflectiveOperationException {
+            Comparator order = (Comparator) reader.objects.get(comparator);
+            switch (kind) {
+                case SORTED_COLLECTION:
+                    backing = type == TreeSet.class ? new TreeSet(order) : new PriorityQueue(order);
+                    return backing;
+                case SORTED_MAP:
+                    backing = new TreeMap(order);
+                    return backing;
+                case LIST_COPY:
+                    backing = new ArrayList(refs.length);
+                    return unmodifiable ? Collections.unmodifiableList((List) backing) : backing;
+                case SET_COPY:
+                    backing = new LinkedHashSet();
+                    return unmodifiable ? Collections.unmodifiableSet((Set) backing) : backing;
+                case MAP_COPY:
+                    backing = new LinkedHashMap();
+                    return unmodifiable ? Collections.unmodifiableMap((Map) backing) : backing;
+                default:
+                    backing = type.getConstructor().newInstance();
+                    return backing;
+            }
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        void fill(Reader reader, Object container, boolean live) {
+            Object target = live ? container : backing;
+            if (target instanceof Map) {
+                Map map = (Map) target;
+                if (live) {
+                    map.clear();
+                }
+                for (int i = 0; i < refs.length; i += 2) {
+                    map.put(reader.objects.get(refs[i]), reader.objects.get(refs[i + 1]));
+                }
+            } else {
+                Collection collection = (Collection) target;
+                if (live) {
+                    collection.clear();
+                }
+                for (int ref : refs) {
+                    collection.add(reader.objects.get(ref));
+                }
+            }
+        }
+    }
+}
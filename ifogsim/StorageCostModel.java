@@ -0,0 +1,147 @@
+package org.fog.test.perfeval;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.nio.file.*;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+public class StorageCostModel {
+
+    // Readings are stored at 1 Hz, in microseconds
+    private static final long INTERVAL = 1_000_000;
+
+    // Measured on this machine: seconds per appended point and per display query, encoded bytes per point, with
+    // the block and display query sizes they were measured for
+    final double appendSeconds;
+    final double querySeconds;
+    final double bytesPerPoint;
+    final int blockPoints;
+    final int displayPoints;
+
+    private StorageCostModel(double appendSeconds, double querySeconds, double bytesPerPoint, int blockPoints,
+                             int displayPoints) {
+        this.appendSeconds = appendSeconds;
+        this.querySeconds = querySeconds;
+        this.bytesPerPoint = bytesPerPoint;
+        this.blockPoints = blockPoints;
+        this.displayPoints = displayPoints;
+    }
+
+    // Measures the costs for the store of a run, on at most 1000 of its patients. Timings depend on the machine
+    // and its load, so runs that should be comparable load one saved profile instead, see save and load.
+    static StorageCostModel measure(SimulationConfig config) throws IOException {
+        int patients = config.edges * config.gatewaysPerEdge * config.patientsPerGateway;
+        return measure(Math.min(patients, 1000), 2 * Math.max(config.storageBlockPoints, config.displayPoints),
+                config.displayPoints, config.storageBlockPoints, config.vitalsVolatility);
+    }
+
+    // Loads a profile written by save, e.g.
+    //   appendMicros=1.8
+    //   queryMicros=42.5
+    //   bytesPerPoint=6.1
+    //   storageBlockPoints=120
+    //   displayPoints=60
+    // The query cost depends on the block and display sizes, so they have to be the ones of the run
+    static StorageCostModel load(Path file, SimulationConfig config) throws IOException {
+        Properties properties = new Properties();
+        try (Reader in = Files.newBufferedReader(file)) {
+            properties.load(in);
+        }
+        StorageCostModel model = new StorageCostModel(
+                Double.parseDouble(properties.getProperty("appendMicros")) / 1e6,
+                Double.parseDouble(properties.getProperty("queryMicros")) / 1e6,
+                Double.parseDouble(properties.getProperty("bytesPerPoint")),
+                Integer.parseInt(properties.getProperty("storageBlockPoints")),
+                Integer.parseInt(properties.getProperty("displayPoints")));
+        if (model.blockPoints != config.storageBlockPoints || model.displayPoints != config.displayPoints) {
+            throw new IllegalArgumentException("Storage profile " + file + " was measured with --storageBlockPoints="
+                    + model.blockPoints + " and --displayPoints=" + model.displayPoints);
+        }
+        return model;
+    }
+
+    void save(Path file) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            out.println("appendMicros=" + appendSeconds * 1e6);
+            out.println("queryMicros=" + querySeconds * 1e6);
+            out.println("bytesPerPoint=" + bytesPerPoint);
+            out.println("storageBlockPoints=" + blockPoints);
+            out.println("displayPoints=" + displayPoints);
+        }
+    }
+
+    // Writes pointsPerPatient vitals for every patient into a scratch store and reads the last displayPoints of
+    // each patient back, all columns; the first pass only warms up the JIT
+    static StorageCostModel measure(int patients, int pointsPerPatient, int displayPoints, int blockPoints,
+                                    double volatility) throws IOException {
+        StorageCostModel model = null;
+        for (int pass = 0; pass < 2; pass++) {
+            Path dir = Files.createTempDirectory("storage-calibration");
+            try {
+                model = run(dir, patients, pointsPerPatient, displayPoints, blockPoints, volatility);
+            } finally {
+                try (Stream<Path> files = Files.walk(dir)) {
+                    for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                        Files.deleteIfExists(file);
+                    }
+                }
+            }
+        }
+        return model;
+    }
+
+    private static StorageCostModel run(Path dir, int patients, int pointsPerPatient, int displayPoints, int blockPoints,
+                                       double volatility) throws IOException {
+        PatientVitals[] vitals = new PatientVitals[patients];
+        for (int p = 0; p < patients; p++) {
+            vitals[p] = new PatientVitals(p, volatility);
+        }
+        int[] allFeatures = new int[PatientVitals.FEATURES.length];
+        for (int i = 0; i < allFeatures.length; i++) {
+            allFeatures[i] = i;
+        }
+
+        TimeSeriesStore store = new TimeSeriesStore(dir, PatientVitals.FEATURES.length, blockPoints, 64L << 20);
+        long appendTime = 0;
+        for (int t = 0; t < pointsPerPatient; t++) {
+            for (int p = 0; p < patients; p++) {
+                vitals[p].sample(allFeatures);
+                long start = System.nanoTime();
+                store.append(p, t * INTERVAL, vitals[p].values);
+                appendTime += System.nanoTime() - start;
+            }
+        }
+        store.close();
+
+        double[] checksum = {0};
+        long from = (pointsPerPatient - displayPoints) * INTERVAL;
+        long to = pointsPerPatient * INTERVAL;
+        long start = System.nanoTime();
+        for (int p = 0; p < patients; p++) {
+            for (int c = 0; c < PatientVitals.FEATURES.length; c++) {
+                store.query(p, from, to, c, (time, value) -> checksum[0] += value);
+            }
+        }
+        long queryTime = System.nanoTime() - start;
+        if (Double.isNaN(checksum[0])) {
+            throw new IllegalStateException("Store returned NaN vitals");
+        }
+
+        return new StorageCostModel(appendTime / 1e9 / store.points, queryTime / 1e9 / patients,
+                (double) store.bytesWritten / store.points, blockPoints, displayPoints);
+    }
+
+    // CPU length of one PREDICTION_RESULT in DataStorage: store it and read back the display window, on a device
+    // of referenceMips like the machine the costs were measured on
+    double cpuPerTuple(double referenceMips) {
+        return (appendSeconds + querySeconds) * InferenceCostModel.TIME_UNITS_PER_SECOND * referenceMips;
+    }
+
+    // Size of a DISPLAY_RESULT carrying the display window in the store's encoding
+    double displayBytes(int displayPoints) {
+        return displayPoints * bytesPerPoint;
+    }
+}
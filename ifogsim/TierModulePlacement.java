@@ -0,0 +1,43 @@
+package org.fog.test.perfeval;
+
+import java.util.*;
+
+import org.fog.application.AppModule;
+import org.fog.application.Application;
+import org.fog.entities.FogDevice;
+import org.fog.placement.ModulePlacement;
+
+public class TierModulePlacement extends ModulePlacement {
+
+    private final SmartHealthTopology topology;
+    private final Map<String, String> moduleToTier;
+
+    // Places each module on every device of a tier. ModulePlacementMapping resolves devices by name with
+    // a linear scan per entry, which becomes quadratic once every gateway needs its own mapping.
+    public TierModulePlacement(SmartHealthTopology topology, Application application, Map<String, String> moduleToTier) {
+        this.topology = topology;
+        this.moduleToTier = moduleToTier;
+        this.setFogDevices(topology.fogDevices);
+        this.setApplication(application);
+        this.setModuleToDeviceMap(new HashMap<String, List<Integer>>());
+        this.setDeviceToModuleMap(new HashMap<Integer, List<AppModule>>());
+        this.setModuleInstanceCountMap(new HashMap<Integer, Map<String, Integer>>());
+        for (FogDevice device : topology.fogDevices) {
+            getModuleInstanceCountMap().put(device.getId(), new HashMap<String, Integer>());
+        }
+        mapModules();
+    }
+
+    @Override
+    protected void mapModules() {
+        for (Map.Entry<String, String> entry : moduleToTier.entrySet()) {
+            AppModule module = getApplication().getModuleByName(entry.getKey());
+            if (module == null) {
+                continue;
+            }
+            for (FogDevice device : topology.getTier(entry.getValue())) {
+                createModuleInstanceOnDevice(module, device);
+            }
+        }
+    }
+}
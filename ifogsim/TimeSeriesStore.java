@@ -0,0 +1,517 @@
+package org.fog.test.perfeval;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+public class TimeSeriesStore implements Closeable, Snapshot.Restorable {
+
+    // Start of every block, so segments can be scanned back into the index when the store is reopened
+    private static final int BLOCK_MAGIC = 0x54534231;
+
+    // magic, series, count, first time, last time, then the byte length of every column
+    private static final int HEADER_BYTES = 4 + 4 + 4 + 8 + 8;
+
+    private final Path dir;
+    private final int columns;
+    private final int blockPoints;
+    private final long segmentBytes;
+
+    // Append-only segment files, each mapped once; blocks never span two segments
+    private transient List<MappedByteBuffer> segments = new ArrayList<>();
+    private transient MappedByteBuffer current;
+
+    // Where the next block goes: mappings cannot be checkpointed, so a restored store maps its segments again and
+    // continues from here
+    private int endSegment;
+    private int endPosition;
+
+    // Per series: the block still being encoded and the index of sealed blocks in time order
+    private final Map<Integer, OpenBlock> open = new HashMap<>();
+    private final Map<Integer, BlockIndex> index = new HashMap<>();
+
+    long points = 0;
+    long bytesWritten = 0;
+
+    // Stores one series per patient with a timestamp and the given number of double columns per point. Points are
+    // encoded column by column (delta-of-delta timestamps, XOR-compressed values) into blocks of blockPoints, which
+    // are appended to memory-mapped segment files of segmentBytes. Not thread-safe.
+    public TimeSeriesStore(Path dir, int columns, int blockPoints, long segmentBytes) throws IOException {
+        this.dir = dir;
+        this.columns = columns;
+        this.blockPoints = blockPoints;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(dir);
+        for (int i = 0; Files.exists(segmentPath(i)); i++) {
+            segments.add(map(segmentPath(i)));
+            scan(i);
+        }
+        if (segments.isEmpty()) {
+            newSegment();
+        } else {
+            current = segments.get(segments.size() - 1);
+            endSegment = segments.size() - 1;
+            endPosition = current.position();
+        }
+    }
+
+    // Maps the segments again and cuts off the blocks sealed after the checkpoint, e.g. by the run that crashed
+    @Override
+    public void restore() throws IOException {
+        segments = new ArrayList<>();
+        for (int i = 0; i <= endSegment; i++) {
+            segments.add(map(segmentPath(i)));
+        }
+        for (int i = endSegment + 1; Files.exists(segmentPath(i)); i++) {
+            Files.delete(segmentPath(i));
+        }
+        current = segments.get(endSegment);
+        if (endPosition + 4 <= current.capacity()) {
+            current.putInt(endPosition, 0);
+        }
+        current.position(endPosition);
+    }
+
+    static boolean exists(Path dir) {
+        return Files.exists(dir.resolve(String.format("segment-%05d.tss", 0)));
+    }
+
+    private Path segmentPath(int i) {
+        return dir.resolve(String.format("segment-%05d.tss", i));
+    }
+
+    private MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+    }
+
+    private void newSegment() throws IOException {
+        current = map(segmentPath(segments.size()));
+        segments.add(current);
+        endSegment = segments.size() - 1;
+        endPosition = 0;
+    }
+
+    // Rebuilds the index of a segment written earlier and positions it after its last block
+    private void scan(int segment) {
+        MappedByteBuffer buffer = segments.get(segment);
+        int position = 0;
+        while (position + HEADER_BYTES + 4 * (columns + 1) <= buffer.capacity() && buffer.getInt(position) == BLOCK_MAGIC) {
+            int series = buffer.getInt(position + 4);
+            int length = blockLength(buffer, position);
+            index.computeIfAbsent(series, s -> new BlockIndex())
+                    .add(buffer.getLong(position + 12), buffer.getLong(position + 20), segment, position);
+            position += length;
+        }
+        buffer.position(position);
+    }
+
+    private int blockLength(MappedByteBuffer buffer, int position) {
+        int length = HEADER_BYTES + 4 * (columns + 1);
+        for (int c = 0; c <= columns; c++) {
+            length += buffer.getInt(position + HEADER_BYTES + 4 * c);
+        }
+        return length;
+    }
+
+    // Times of one series must not decrease
+    void append(int series, long time, double[] values) throws IOException {
+        OpenBlock block = open.computeIfAbsent(series, s -> new OpenBlock(columns));
+        block.append(time, values);
+        points++;
+        if (block.count == blockPoints) {
+            seal(series, block);
+        }
+    }
+
+    private void seal(int series, OpenBlock block) throws IOException {
+        int length = HEADER_BYTES + 4 * (columns + 1);
+        for (BitWriter column : block.columns) {
+            length += column.byteLength();
+        }
+        if (length > segmentBytes) {
+            throw new IllegalStateException("Block of " + length + " bytes does not fit a segment");
+        }
+        if (current.remaining() < length) {
+            newSegment();
+        }
+
+        int position = current.position();
+        current.putInt(BLOCK_MAGIC).putInt(series).putInt(block.count).putLong(block.firstTime).putLong(block.lastTime);
+        for (BitWriter column : block.columns) {
+            current.putInt(column.byteLength());
+        }
+        for (BitWriter column : block.columns) {
+            column.writeTo(current);
+        }
+        index.computeIfAbsent(series, s -> new BlockIndex()).add(block.firstTime, block.lastTime, segments.size() - 1, position);
+        bytesWritten += length;
+        endPosition = current.position();
+        block.reset();
+    }
+
+    // Calls the visitor for every point of the series with from <= time <= to, in time order; only the timestamp
+    // column and the requested value column are decoded. Returns the number of points visited.
+    int query(int series, long from, long to, int column, PointVisitor visitor) {
+        int visited = 0;
+        BlockIndex blocks = index.get(series);
+        if (blocks != null) {
+            for (int b = blocks.firstEndingAtOrAfter(from); b < blocks.size && blocks.firstTimes[b] <= to; b++) {
+                MappedByteBuffer segment = segments.get(blocks.segments[b]);
+                int position = blocks.offsets[b];
+                int count = segment.getInt(position + 8);
+                int lengths = position + HEADER_BYTES;
+                int timeStart = lengths + 4 * (columns + 1);
+                int valueStart = timeStart;
+                for (int c = 0; c <= column; c++) {
+                    valueStart += segment.getInt(lengths + 4 * c);
+                }
+                visited += decode(new BitReader(segment, timeStart), new BitReader(segment, valueStart), count, from, to, visitor);
+            }
+        }
+        OpenBlock block = open.get(series);
+        if (block != null && block.count > 0 && block.lastTime >= from && block.firstTime <= to) {
+            visited += decode(block.columns[0].reader(), block.columns[column + 1].reader(), block.count, from, to, visitor);
+        }
+        return visited;
+    }
+
+    private static int decode(BitReader times, BitReader values, int count, long from, long to, PointVisitor visitor) {
+        TimestampDecoder timeDecoder = new TimestampDecoder();
+        XorDecoder valueDecoder = new XorDecoder();
+        int visited = 0;
+        for (int i = 0; i < count; i++) {
+            long time = timeDecoder.next(times);
+            double value = valueDecoder.next(values);
+            if (time > to) {
+                break;
+            }
+            if (time >= from) {
+                visitor.visit(time, value);
+                visited++;
+            }
+        }
+        return visited;
+    }
+
+    // Seals all open blocks so every appended point is in a segment
+    @Override
+    public void close() throws IOException {
+        for (Map.Entry<Integer, OpenBlock> entry : open.entrySet()) {
+            if (entry.getValue().count > 0) {
+                seal(entry.getKey(), entry.getValue());
+            }
+        }
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    interface PointVisitor {
+        void visit(long time, double value);
+    }
+
+    // Sealed blocks of one series as parallel arrays, sorted by time because series are append-only
+    private static class BlockIndex {
+        long[] firstTimes = new long[4];
+        long[] lastTimes = new long[4];
+        int[] segments = new int[4];
+        int[] offsets = new int[4];
+        int size = 0;
+
+        void add(long firstTime, long lastTime, int segment, int offset) {
+            if (size == firstTimes.length) {
+                firstTimes = Arrays.copyOf(firstTimes, size * 2);
+                lastTimes = Arrays.copyOf(lastTimes, size * 2);
+                segments = Arrays.copyOf(segments, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            firstTimes[size] = firstTime;
+            lastTimes[size] = lastTime;
+            segments[size] = segment;
+            offsets[size] = offset;
+            size++;
+        }
+
+        // Binary search for the first block that may contain the time
+        int firstEndingAtOrAfter(long time) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (lastTimes[mid] < time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    // Block being filled: column 0 holds the timestamps, columns 1.. the values
+    private static class OpenBlock {
+        final BitWriter[] columns;
+        final TimestampEncoder times = new TimestampEncoder();
+        final XorEncoder[] values;
+        int count;
+        long firstTime;
+        long lastTime;
+
+        OpenBlock(int valueColumns) {
+            columns = new BitWriter[valueColumns + 1];
+            values = new XorEncoder[valueColumns];
+            for (int c = 0; c < columns.length; c++) {
+                columns[c] = new BitWriter();
+            }
+            for (int c = 0; c < valueColumns; c++) {
+                values[c] = new XorEncoder();
+            }
+        }
+
+        void append(long time, double[] point) {
+            if (count == 0) {
+                firstTime = time;
+            }
+            lastTime = time;
+            times.next(columns[0], time);
+            for (int c = 0; c < values.length; c++) {
+                values[c].next(columns[c + 1], point[c]);
+            }
+            count++;
+        }
+
+        void reset() {
+            count = 0;
+            times.reset();
+            for (BitWriter column : columns) {
+                column.reset();
+            }
+            for (XorEncoder value : values) {
+                value.reset();
+            }
+        }
+    }
+
+    // Gorilla timestamp encoding: the first time in full, then the delta of deltas in a variable-width bucket,
+    // a single 0 bit for readings at a steady interval
+    private static class TimestampEncoder {
+        private int count;
+        private long previous;
+        private long previousDelta;
+
+        void next(BitWriter out, long time) {
+            if (count++ == 0) {
+                out.write(time, 64);
+            } else {
+                long delta = time - previous;
+                long deltaOfDelta = delta - previousDelta;
+                if (deltaOfDelta == 0) {
+                    out.write(0, 1);
+                } else if (deltaOfDelta >= -63 && deltaOfDelta <= 64) {
+                    out.write(0b10, 2);
+                    out.write(deltaOfDelta + 63, 7);
+                } else if (deltaOfDelta >= -255 && deltaOfDelta <= 256) {
+                    out.write(0b110, 3);
+                    out.write(deltaOfDelta + 255, 9);
+                } else if (deltaOfDelta >= -2047 && deltaOfDelta <= 2048) {
+                    out.write(0b1110, 4);
+                    out.write(deltaOfDelta + 2047, 12);
+                } else {
+                    out.write(0b1111, 4);
+                    out.write(deltaOfDelta, 64);
+                }
+                previousDelta = delta;
+            }
+            previous = time;
+        }
+
+        void reset() {
+            count = 0;
+            previousDelta = 0;
+        }
+    }
+
+    private static class TimestampDecoder {
+        private int count;
+        private long previous;
+        private long previousDelta;
+
+        long next(BitReader in) {
+            if (count++ == 0) {
+                previous = in.read(64);
+                return previous;
+            }
+            long deltaOfDelta;
+            if (in.read(1) == 0) {
+                deltaOfDelta = 0;
+            } else if (in.read(1) == 0) {
+                deltaOfDelta = in.read(7) - 63;
+            } else if (in.read(1) == 0) {
+                deltaOfDelta = in.read(9) - 255;
+            } else if (in.read(1) == 0) {
+                deltaOfDelta = in.read(12) - 2047;
+            } else {
+                deltaOfDelta = in.read(64);
+            }
+            previousDelta += deltaOfDelta;
+            previous += previousDelta;
+            return previous;
+        }
+    }
+
+    // Gorilla value encoding: each value is XORed with the previous one; an unchanged value costs one bit and a
+    // change only stores the meaningful bits, reusing the previous leading/trailing zero window when it fits
+    private static class XorEncoder {
+        private int count;
+        private long previous;
+        private int leading = Integer.MAX_VALUE;
+        private int trailing;
+
+        void next(BitWriter out, double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            if (count++ == 0) {
+                out.write(bits, 64);
+                previous = bits;
+                return;
+            }
+            long xor = bits ^ previous;
+            previous = bits;
+            if (xor == 0) {
+                out.write(0, 1);
+                return;
+            }
+            int newLeading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+            int newTrailing = Long.numberOfTrailingZeros(xor);
+            if (leading != Integer.MAX_VALUE && newLeading >= leading && newTrailing >= trailing) {
+                out.write(0b10, 2);
+                out.write(xor >>> trailing, 64 - leading - trailing);
+            } else {
+                leading = newLeading;
+                trailing = newTrailing;
+                int meaningful = 64 - leading - trailing;
+                out.write(0b11, 2);
+                out.write(leading, 5);
+                out.write(meaningful - 1, 6);
+                out.write(xor >>> trailing, meaningful);
+            }
+        }
+
+        void reset() {
+            count = 0;
+            leading = Integer.MAX_VALUE;
+            trailing = 0;
+        }
+    }
+
+    private static class XorDecoder {
+        private int count;
+        private long previous;
+        private int leading;
+        private int trailing;
+
+        double next(BitReader in) {
+            if (count++ == 0) {
+                previous = in.read(64);
+            } else if (in.read(1) == 1) {
+                if (in.read(1) == 1) {
+                    leading = (int) in.read(5);
+                    trailing = 64 - leading - ((int) in.read(6) + 1);
+                }
+                previous ^= in.read(64 - leading - trailing) << trailing;
+            }
+            return Double.longBitsToDouble(previous);
+        }
+    }
+
+    // Bits packed most significant first into longs
+    private static class BitWriter {
+        private long[] words = new long[2];
+        private long bits = 0;
+
+        void write(long value, int width) {
+            if (width == 0) {
+                return;
+            }
+            if (width < 64) {
+                value &= (1L << width) - 1;
+            }
+            int word = (int) (bits >>> 6);
+            int used = (int) (bits & 63);
+            if (word + 1 >= words.length) {
+                words = Arrays.copyOf(words, words.length * 2);
+            }
+            int free = 64 - used;
+            if (width <= free) {
+                words[word] |= value << (free - width);
+            } else {
+                words[word] |= value >>> (width - free);
+                words[word + 1] |= value << (64 - (width - free));
+            }
+            bits += width;
+        }
+
+        int byteLength() {
+            return (int) ((bits + 63) >>> 6) * 8;
+        }
+
+        void writeTo(MappedByteBuffer out) {
+            for (int i = 0, n = byteLength() / 8; i < n; i++) {
+                out.putLong(words[i]);
+            }
+        }
+
+        BitReader reader() {
+            return new BitReader(words);
+        }
+
+        void reset() {
+            Arrays.fill(words, 0, (int) ((bits + 63) >>> 6), 0);
+            bits = 0;
+        }
+    }
+
+    private static class BitReader {
+        private final MappedByteBuffer buffer;
+        private final int start;
+        private final long[] words;
+        private long bits = 0;
+
+        BitReader(MappedByteBuffer buffer, int start) {
+            this.buffer = buffer;
+            this.start = start;
+            this.words = null;
+        }
+
+        BitReader(long[] words) {
+            this.buffer = null;
+            this.start = 0;
+            this.words = words;
+        }
+
+        private long word(int i) {
+            return words != null ? words[i] : buffer.getLong(start + 8 * i);
+        }
+
+        long read(int width) {
+            if (width == 0) {
+                return 0;
+            }
+            int word = (int) (bits >>> 6);
+            int used = (int) (bits & 63);
+            int free = 64 - used;
+            long value;
+            if (width <= free) {
+                value = word(word) >>> (free - width);
+            } else {
+                value = (word(word) << (width - free)) | (word(word + 1) >>> (64 - (width - free)));
+            }
+            bits += width;
+            return width == 64 ? value : value & ((1L << width) - 1);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.fog.test.perfeval;
+
+import org.fog.utils.distribution.Distribution;
+
+public class TraceDistribution extends Distribution {
+
+    // Distribution type next to iFogSim's NORMAL, DETERMINISTIC and UNIFORM
+    public static final int TRACE = 4;
+
+    private final TraceFile trace;
+    private final TraceFile.Row row = new TraceFile.Row();
+
+    // Byte range of the trace this stream replays, wrapping around at the end
+    private final long sliceStart;
+    private final long sliceEnd;
+    private long position;
+
+    private double lastTime = Double.NaN;
+    private int currentSize;
+
+    // Replays slice `stream` of `streams` equal slices of the trace, so every patient follows a different part of
+    // the recording while only keeping a file position
+    public TraceDistribution(TraceFile trace, int stream, int streams, boolean readFeatures) {
+        this.trace = trace;
+        if (readFeatures) {
+            row.features = new double[PatientVitals.FEATURES.length];
+        }
+        long span = trace.getSize() - trace.getDataStart();
+        long start = trace.alignToRow(trace.getDataStart() + span * stream / streams);
+        if (start >= trace.getSize()) {
+            start = trace.getDataStart();
+        }
+        long end = trace.alignToRow(trace.getDataStart() + span * (stream + 1) / streams);
+        if (end <= start) {
+            end = trace.read(start, row);
+        }
+        this.sliceStart = start;
+        this.sliceEnd = end;
+        this.position = start;
+    }
+
+    // Advances to the next row and returns the time since the previous one; without a time column, or when the
+    // slice wraps around, the mean inter-arrival time of the trace is used
+    @Override
+    public double getNextValue() {
+        if (position >= sliceEnd) {
+            position = sliceStart;
+            lastTime = Double.NaN;
+        }
+        position = trace.read(position, row);
+        currentSize = row.jsonSize;
+
+        double interval = Double.isNaN(lastTime) || !(row.time > lastTime) ? trace.getMeanInterArrival() : row.time - lastTime;
+        lastTime = row.time;
+        return interval;
+    }
+
+    // Size in bytes of the current row sent as a JSON object, as simulate_iot.py does
+    int getCurrentSize() {
+        return currentSize;
+    }
+
+    // Model feature values of the current row (NaN where the trace has no such column), null if not read
+    double[] getCurrentFeatures() {
+        return row.features;
+    }
+
+    @Override
+    public int getDistributionType() {
+        return TRACE;
+    }
+
+    @Override
+    public double getMeanInterTransmitTime() {
+        return trace.getMeanInterArrival();
+    }
+}
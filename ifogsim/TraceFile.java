@@ -0,0 +1,201 @@
+package org.fog.test.perfeval;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+public class TraceFile implements Snapshot.Restorable {
+
+    // Files are mapped in 1 GB segments, since a single mapping is limited to 2 GB
+    private static final int SEGMENT_BITS = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+
+    // Rows read from the start of the file to estimate the mean inter-arrival time
+    private static final int SAMPLE_ROWS = 1000;
+
+    // Mappings cannot be checkpointed, so a restored trace maps the file again
+    private final Path file;
+    private transient MappedByteBuffer[] segments;
+    private final long size;
+    private final long dataStart;
+
+    // Column holding the row timestamp (-1 if there is none) and the factor converting it to simulation time
+    private final int timeColumn;
+    private final double timeScale;
+
+    // Index in PatientVitals.FEATURES of every column, -1 for columns that are not model features
+    private final int[] columnFeatures;
+
+    // Bytes a row's JSON object (one "name": value pair per column) adds on top of its values
+    private final int jsonOverhead;
+
+    private final double meanInterArrival;
+
+    // Maps a recorded CSV trace such as clean-dataset.csv without reading it into the heap; rows are only parsed
+    // when a sensor emits, so memory stays bounded by the OS page cache whatever the trace size is
+    public TraceFile(Path file, String timeColumnName, double timeScale, double defaultInterval) throws IOException {
+        this.file = file;
+        size = Files.size(file);
+        map();
+
+        StringBuilder header = new StringBuilder();
+        long position = 0;
+        while (position < size && byteAt(position) != '\n') {
+            header.append((char) byteAt(position++));
+        }
+        dataStart = Math.min(size, position + 1);
+        if (dataStart >= size) {
+            throw new IllegalArgumentException("Trace " + file + " has no rows");
+        }
+
+        List<String> columns = Arrays.asList(header.toString().trim().split(","));
+        timeColumn = timeColumnName == null ? -1 : columns.indexOf(timeColumnName);
+        if (timeColumnName != null && timeColumn < 0) {
+            throw new IllegalArgumentException("Trace has no column " + timeColumnName);
+        }
+        this.timeScale = timeScale;
+
+        columnFeatures = new int[columns.size()];
+        List<String> features = Arrays.asList(PatientVitals.FEATURES);
+        for (int i = 0; i < columns.size(); i++) {
+            columnFeatures[i] = features.indexOf(columns.get(i).trim());
+        }
+
+        int overhead = 2 + 2 * (columns.size() - 1);
+        for (String column : columns) {
+            overhead += column.length() + 4;
+        }
+        jsonOverhead = overhead;
+
+        meanInterArrival = timeColumn < 0 ? defaultInterval : sampleMeanInterArrival(defaultInterval);
+    }
+
+    private void map() throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = (long) i << SEGMENT_BITS;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size - start));
+            }
+        }
+    }
+
+    @Override
+    public void restore() throws IOException {
+        map();
+    }
+
+    private double sampleMeanInterArrival(double defaultInterval) {
+        Row row = new Row();
+        long position = dataStart;
+        double first = Double.NaN;
+        double last = Double.NaN;
+        int rows = 0;
+        while (rows < SAMPLE_ROWS && position < size) {
+            position = read(position, row);
+            if (Double.isNaN(first)) {
+                first = row.time;
+            }
+            last = row.time;
+            rows++;
+        }
+        return rows < 2 || last <= first ? defaultInterval : (last - first) / (rows - 1);
+    }
+
+    byte byteAt(long position) {
+        return segments[(int) (position >>> SEGMENT_BITS)].get((int) (position & (SEGMENT_SIZE - 1)));
+    }
+
+    // Returns the start of the first row at or after the position
+    long alignToRow(long position) {
+        if (position <= dataStart) {
+            return dataStart;
+        }
+        while (position < size && byteAt(position - 1) != '\n') {
+            position++;
+        }
+        return position;
+    }
+
+    // Parses the row starting at the position into the given row and returns the start of the next row;
+    // feature values are only parsed for rows that have a features array
+    long read(long position, Row row) {
+        if (row.features != null) {
+            Arrays.fill(row.features, Double.NaN);
+        }
+        int commas = 0;
+        int column = 0;
+        long fieldStart = position;
+        long end = position;
+        double time = Double.NaN;
+        while (end < size) {
+            byte b = byteAt(end);
+            if (b == ',' || b == '\n' || b == '\r') {
+                if (column == timeColumn) {
+                    time = parseField(fieldStart, end);
+                }
+                if (row.features != null && column < columnFeatures.length && columnFeatures[column] >= 0) {
+                    row.features[columnFeatures[column]] = parseField(fieldStart, end);
+                }
+                if (b != ',') {
+                    break;
+                }
+                commas++;
+                column++;
+                fieldStart = end + 1;
+            }
+            end++;
+        }
+        if (end == size && column == timeColumn) {
+            time = parseField(fieldStart, end);
+        }
+        if (end == size && row.features != null && column < columnFeatures.length && columnFeatures[column] >= 0) {
+            row.features[columnFeatures[column]] = parseField(fieldStart, end);
+        }
+
+        row.time = time * timeScale;
+        row.jsonSize = jsonOverhead + (int) (end - position) - commas;
+        long next = end;
+        while (next < size && (byteAt(next) == '\n' || byteAt(next) == '\r')) {
+            next++;
+        }
+        return next;
+    }
+
+    private double parseField(long start, long end) {
+        StringBuilder field = new StringBuilder();
+        for (long i = start; i < end; i++) {
+            field.append((char) byteAt(i));
+        }
+        try {
+            return Double.parseDouble(field.toString().trim());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    long getDataStart() {
+        return dataStart;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    boolean hasTimeColumn() {
+        return timeColumn >= 0;
+    }
+
+    double getMeanInterArrival() {
+        return meanInterArrival;
+    }
+
+    // Values of one parsed row, reused by each reader to avoid allocating per emission
+    static class Row {
+        double time;
+        int jsonSize;
+        double[] features;
+    }
+}
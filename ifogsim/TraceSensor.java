@@ -0,0 +1,35 @@
+package org.fog.test.perfeval;
+
+import org.fog.application.AppEdge;
+
+public class TraceSensor extends PatientSensor {
+
+    private final TraceDistribution trace;
+
+    // Whether tuples take the JSON size of their trace row; binary readings keep the measured size of the AppEdge
+    private final boolean rowSizes;
+
+    public TraceSensor(String name, String tupleType, int userId, String appId, TraceDistribution trace,
+                       PatientVitals vitals, boolean rowSizes) {
+        super(name, tupleType, userId, appId, trace, vitals);
+        this.trace = trace;
+        this.rowSizes = rowSizes;
+    }
+
+    // The sensor builds its tuple from the AppEdge, so the edge takes the size of the current trace row first;
+    // the simulation is single-threaded, so no other sensor sees the value in between
+    @Override
+    public void transmit() {
+        AppEdge edge = getApp().getEdgeMap().get(getTupleType());
+        if (edge != null && rowSizes) {
+            edge.setTupleNwLength(trace.getCurrentSize());
+        }
+        super.transmit();
+    }
+
+    // Vitals come from the recorded row rather than the synthetic random walk
+    @Override
+    protected void readVitals() {
+        vitals.set(features, trace.getCurrentFeatures());
+    }
+}
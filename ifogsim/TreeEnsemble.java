@@ -0,0 +1,194 @@
+package org.fog.test.perfeval;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+public class TreeEnsemble {
+
+    // All trees flattened into one set of arrays; a node is a leaf when left[node] < 0
+    private final int[] roots;
+    private final int[] left;
+    private final int[] right;
+    private final int[] feature;
+    private final float[] threshold;
+    private final boolean[] defaultLeft;
+    private final float baseScore;
+    final int features;
+
+    // Loads a model saved by XGBoost's save_model in JSON format (export_model.py writes one from the pickle)
+    @SuppressWarnings("unchecked")
+    static TreeEnsemble load(Path file) throws IOException {
+        Map<String, Object> learner = (Map<String, Object>) ((Map<String, Object>)
+                new JsonReader(new String(Files.readAllBytes(file), StandardCharsets.UTF_8)).read()).get("learner");
+
+        String objective = (String) ((Map<String, Object>) learner.get("objective")).get("name");
+        if (!objective.startsWith("reg:squarederror") && !objective.equals("reg:linear")) {
+            throw new IllegalArgumentException("Unsupported objective " + objective + ", only regression models are served");
+        }
+        Map<String, Object> modelParam = (Map<String, Object>) learner.get("learner_model_param");
+        float baseScore = Float.parseFloat(((String) modelParam.get("base_score")).replaceAll("[\\[\\]]", ""));
+        int features = Integer.parseInt((String) modelParam.get("num_feature"));
+
+        List<Object> trees = (List<Object>) ((Map<String, Object>) ((Map<String, Object>)
+                learner.get("gradient_booster")).get("model")).get("trees");
+        return new TreeEnsemble((List<Map<String, Object>>) (List<?>) trees, baseScore, features);
+    }
+
+    @SuppressWarnings("unchecked")
+    private TreeEnsemble(List<Map<String, Object>> trees, float baseScore, int features) {
+        this.baseScore = baseScore;
+        this.features = features;
+        int nodes = 0;
+        for (Map<String, Object> tree : trees) {
+            nodes += ((List<Object>) tree.get("left_children")).size();
+        }
+        roots = new int[trees.size()];
+        left = new int[nodes];
+        right = new int[nodes];
+        feature = new int[nodes];
+        threshold = new float[nodes];
+        defaultLeft = new boolean[nodes];
+
+        // For leaves XGBoost stores the leaf value in split_conditions
+        int offset = 0;
+        for (int t = 0; t < trees.size(); t++) {
+            Map<String, Object> tree = trees.get(t);
+            List<Object> lefts = (List<Object>) tree.get("left_children");
+            List<Object> rights = (List<Object>) tree.get("right_children");
+            List<Object> indices = (List<Object>) tree.get("split_indices");
+            List<Object> conditions = (List<Object>) tree.get("split_conditions");
+            List<Object> defaults = (List<Object>) tree.get("default_left");
+            roots[t] = offset;
+            for (int i = 0; i < lefts.size(); i++) {
+                int l = ((Number) lefts.get(i)).intValue();
+                left[offset + i] = l < 0 ? -1 : offset + l;
+                right[offset + i] = l < 0 ? -1 : offset + ((Number) rights.get(i)).intValue();
+                feature[offset + i] = ((Number) indices.get(i)).intValue();
+                threshold[offset + i] = ((Number) conditions.get(i)).floatValue();
+                Object d = defaults.get(i);
+                defaultLeft[offset + i] = d instanceof Boolean ? (Boolean) d : ((Number) d).intValue() != 0;
+            }
+            offset += lefts.size();
+        }
+    }
+
+    // Predicts rows feature vectors stored one after another in values; trees are walked one at a time over the
+    // whole batch so each tree stays in cache. XGBoost compares in float32 and sends NaN the default way.
+    void predict(float[] values, int rows, float[] out) {
+        Arrays.fill(out, 0, rows, baseScore);
+        for (int root : roots) {
+            for (int r = 0, base = 0; r < rows; r++, base += features) {
+                int node = root;
+                int l;
+                while ((l = left[node]) >= 0) {
+                    float x = values[base + feature[node]];
+                    node = x < threshold[node] || (x != x && defaultLeft[node]) ? l : right[node];
+                }
+                out[r] += threshold[node];
+            }
+        }
+    }
+
+    int trees() {
+        return roots.length;
+    }
+
+    // Minimal JSON reader for the model file, only used once at startup
+    private static class JsonReader {
+        private final String text;
+        private int position = 0;
+
+        JsonReader(String text) {
+            this.text = text;
+        }
+
+        Object read() {
+            skipWhitespace();
+            char c = text.charAt(position);
+            switch (c) {
+                case '{': return readObject();
+                case '[': return readArray();
+                case '"': return readString();
+                case 't': position += 4; return Boolean.TRUE;
+                case 'f': position += 5; return Boolean.FALSE;
+                case 'n': position += 4; return null;
+                default: return readNumber();
+            }
+        }
+
+        private Map<String, Object> readObject() {
+            Map<String, Object> object = new HashMap<>();
+            position++;
+            skipWhitespace();
+            if (text.charAt(position) == '}') {
+                position++;
+                return object;
+            }
+            while (true) {
+                skipWhitespace();
+                String key = readString();
+                skipWhitespace();
+                position++; // ':'
+                object.put(key, read());
+                skipWhitespace();
+                if (text.charAt(position++) == '}') {
+                    return object;
+                }
+            }
+        }
+
+        private List<Object> readArray() {
+            List<Object> array = new ArrayList<>();
+            position++;
+            skipWhitespace();
+            if (text.charAt(position) == ']') {
+                position++;
+                return array;
+            }
+            while (true) {
+                array.add(read());
+                skipWhitespace();
+                if (text.charAt(position++) == ']') {
+                    return array;
+                }
+            }
+        }
+
+        private String readString() {
+            StringBuilder value = new StringBuilder();
+            position++;
+            char c;
+            while ((c = text.charAt(position++)) != '"') {
+                if (c == '\\') {
+                    c = text.charAt(position++);
+                    if (c == 'u') {
+                        c = (char) Integer.parseInt(text.substring(position, position + 4), 16);
+                        position += 4;
+                    } else if (c == 'n') {
+                        c = '\n';
+                    } else if (c == 't') {
+                        c = '\t';
+                    }
+                }
+                value.append(c);
+            }
+            return value.toString();
+        }
+
+        private Double readNumber() {
+            int start = position;
+            while (position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0) {
+                position++;
+            }
+            return Double.parseDouble(text.substring(start, position));
+        }
+
+        private void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+    }
+}
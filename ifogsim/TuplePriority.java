@@ -0,0 +1,35 @@
+package org.fog.test.perfeval;
+
+import java.util.*;
+
+import org.fog.entities.Tuple;
+
+public class TuplePriority {
+
+    // Priority classes; lower values are served first. A tuple stores its class plus one in its CloudSim class type,
+    // since Cloudlet.setClassType ignores values of 0 or less. Untagged tuples (class type 0) count as critical, so
+    // nothing is shed unless it was marked routine.
+    static final int CRITICAL = 0;
+    static final int ROUTINE = 1;
+    static final String[] NAMES = {"critical", "routine"};
+
+    // Sensor streams whose readings are routine
+    private static final Set<String> routineStreams = new HashSet<>(Collections.singletonList("WEIGHT_GENDER_STREAM"));
+
+    static void setRoutineStreams(Collection<String> streams) {
+        routineStreams.clear();
+        routineStreams.addAll(streams);
+    }
+
+    static int ofStream(String tupleType) {
+        return routineStreams.contains(tupleType) ? ROUTINE : CRITICAL;
+    }
+
+    static int of(Tuple tuple) {
+        return Math.max(CRITICAL, Math.min(ROUTINE, tuple.getClassType() - 1));
+    }
+
+    static void set(Tuple tuple, int priority) {
+        tuple.setClassType(priority + 1);
+    }
+}
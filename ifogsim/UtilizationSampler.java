@@ -0,0 +1,40 @@
+package org.fog.test.perfeval;
+
+import java.util.List;
+
+import org.cloudbus.cloudsim.core.SimEntity;
+import org.cloudbus.cloudsim.core.SimEvent;
+import org.fog.entities.FogDevice;
+
+public class UtilizationSampler extends SimEntity {
+
+    // Event tag outside the range used by FogEvents
+    private static final int SAMPLE = 9002;
+
+    private final List<FogDevice> devices;
+    private final double interval;
+
+    // Records the CPU utilization of every device once per interval of simulated time
+    public UtilizationSampler(String name, List<FogDevice> devices, double interval) {
+        super(name);
+        this.devices = devices;
+        this.interval = interval;
+    }
+
+    @Override
+    public void startEntity() {
+        send(getId(), interval, SAMPLE);
+    }
+
+    @Override
+    public void processEvent(SimEvent ev) {
+        if (ev.getTag() == SAMPLE) {
+            SimulationMetrics.getInstance().sampleUtilization(devices, interval);
+            send(getId(), interval, SAMPLE);
+        }
+    }
+
+    @Override
+    public void shutdownEntity() {
+    }
+}
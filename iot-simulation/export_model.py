@@ -0,0 +1,7 @@
+import joblib
+
+# Export the trained model for the Java edge gateway (EdgeGateway.java), which reads XGBoost's JSON format
+model = joblib.load('glucose_model_xgb.pkl')
+model.get_booster().save_model('glucose_model_xgb.json')
+
+print("Saved glucose_model_xgb.json")